@@ -6,6 +6,7 @@ import androidx.core.app.NotificationChannelCompat;
 import androidx.core.app.NotificationManagerCompat;
 
 import com.ensias.ihearu.R;
+import com.ensias.ihearu.skills.open.InstalledAppsIndex;
 
 import java.util.Collections;
 
@@ -22,5 +23,8 @@ public class App extends Application {
                         .setName(getString(R.string.error_report_channel_name))
                         .setDescription(getString(R.string.error_report_channel_description))
                         .build()));
+
+        // the open skill needs the list of installed apps, which is slow to query
+        InstalledAppsIndex.getInstance(this).startIndexing();
     }
 }
@@ -23,8 +23,12 @@ import androidx.core.view.GravityCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
 import androidx.preference.PreferenceManager;
 
+import com.ensias.ihearu.eval.ParallelSkillScorer;
 import com.ensias.ihearu.eval.SkillEvaluator;
+import com.ensias.ihearu.eval.SkillGrammar;
+import com.ensias.ihearu.eval.SkillKeywordIndex;
 import com.ensias.ihearu.eval.SkillRanker;
+import com.ensias.ihearu.eval.SpeculativeSkillMatcher;
 import com.ensias.ihearu.input.InputDevice;
 import com.ensias.ihearu.input.SpeechInputDevice;
 import com.ensias.ihearu.input.ToolbarInputDevice;
@@ -189,7 +193,7 @@ public class MainActivity extends BaseActivity
     protected void onPause() {
         super.onPause();
         if (skillEvaluator != null) {
-            skillEvaluator.cancelGettingInput();
+            skillEvaluator.onPause();
         }
     }
 
@@ -204,6 +208,8 @@ public class MainActivity extends BaseActivity
             initializeSkillEvaluator();
             invalidateOptionsMenu();
             setupVoiceButton();
+        } else if (skillEvaluator != null) {
+            skillEvaluator.onResume();
         }
     }
 
@@ -282,8 +288,9 @@ public class MainActivity extends BaseActivity
 
         skillEvaluator = new SkillEvaluator(
                 // Sections language is initialized in BaseActivity.setLocale
-                new SkillRanker(SkillHandler.getStandardSkillBatch(),
-                        SkillHandler.getFallbackSkill()),
+                buildSkillRanker(),
+                buildParallelSkillScorer(),
+                buildSpeculativeSkillMatcher(),
                 primaryInputDevice,
                 secondaryInputDevice,
                 speechOutputDevice,
@@ -292,6 +299,33 @@ public class MainActivity extends BaseActivity
         skillEvaluator.showInitialScreen();
     }
 
+    private static SkillRanker buildSkillRanker() {
+        return new SkillRanker(SkillHandler.getStandardSkillBatch(),
+                SkillHandler.getFallbackSkill(),
+                SkillKeywordIndex.fromSectionKeywords(Sections.getSectionKeywords()),
+                SkillGrammar.fromSectionGrammars(Sections.getSectionGrammars()),
+                Sections.getWordDictionary());
+    }
+
+    @Nullable
+    private ParallelSkillScorer buildParallelSkillScorer() {
+        if (preferences.getBoolean(getString(R.string.pref_key_parallel_evaluation), true)) {
+            // every call to buildSkillRanker() gets skill instances not used by others, as needed
+            return new ParallelSkillScorer(MainActivity::buildSkillRanker);
+        } else {
+            return null;
+        }
+    }
+
+    @Nullable
+    private SpeculativeSkillMatcher buildSpeculativeSkillMatcher() {
+        if (preferences.getBoolean(getString(R.string.pref_key_speculative_evaluation), true)) {
+            return new SpeculativeSkillMatcher(MainActivity::buildSkillRanker);
+        } else {
+            return null;
+        }
+    }
+
     private InputDevice buildPrimaryInputDevice() {
         final String preference = preferences
                 .getString(getString(R.string.pref_key_input_method), "");
@@ -0,0 +1,89 @@
+package com.ensias.ihearu;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+// The keywords (see SkillKeywordIndex) and grammars (see SkillGrammar) of the sections of one
+// locale, generated by the sentencesCompiler gradle task in a binary table for each locale, so
+// that only the one for the locale in use is loaded. The format (as in DataOutputStream) is:
+// int version, int wordCount, wordCount * UTF word,
+// int sectionCount, sectionCount * (UTF sectionId, wordIds keywords, wordIds grammar)
+// where wordIds is an int length (-1 for null) followed by length * int index of the word.
+public final class SectionTables {
+
+    public static final int VERSION = 1;
+
+    // all of the distinct words used by the sections, see WordDictionary
+    public final String[] words;
+    public final Map<String, String[]> sectionKeywords;
+    public final Map<String, String[]> sectionGrammars;
+
+    private SectionTables(final String[] words,
+                          final Map<String, String[]> sectionKeywords,
+                          final Map<String, String[]> sectionGrammars) {
+        this.words = words;
+        this.sectionKeywords = sectionKeywords;
+        this.sectionGrammars = sectionGrammars;
+    }
+
+    // the path of the table of a locale, in the assets of the app
+    public static String getAssetPath(final String locale) {
+        return "sections/" + locale + ".bin";
+    }
+
+    public static SectionTables read(final InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported section tables version " + version);
+        }
+
+        // the same String instances are then shared by all sections using them
+        final String[] words = new String[in.readInt()];
+        for (int i = 0; i < words.length; ++i) {
+            words[i] = in.readUTF();
+        }
+
+        final int sectionCount = in.readInt();
+        final Map<String, String[]> sectionKeywords = new HashMap<>(sectionCount * 2);
+        final Map<String, String[]> sectionGrammars = new HashMap<>();
+        for (int i = 0; i < sectionCount; ++i) {
+            final String sectionId = in.readUTF();
+            // sections which can match without words are explicitly mapped to null
+            sectionKeywords.put(sectionId, readWords(in, words));
+            @Nullable final String[] grammar = readWords(in, words);
+            if (grammar != null) {
+                sectionGrammars.put(sectionId, grammar);
+            }
+        }
+
+        return new SectionTables(words, Collections.unmodifiableMap(sectionKeywords),
+                Collections.unmodifiableMap(sectionGrammars));
+    }
+
+    @Nullable
+    private static String[] readWords(final DataInputStream in, final String[] words)
+            throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        final String[] result = new String[length];
+        for (int i = 0; i < length; ++i) {
+            final int wordId = in.readInt();
+            if (wordId < 0 || wordId >= words.length) {
+                throw new IOException("Invalid word id " + wordId + " in section tables");
+            }
+            result[i] = words[wordId];
+        }
+        return result;
+    }
+}
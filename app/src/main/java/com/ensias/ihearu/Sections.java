@@ -2,38 +2,79 @@ package com.ensias.ihearu;
 
 import static com.ensias.ihearu.SectionsGenerated.localeSectionsMap;
 
+import android.content.Context;
+import android.util.Log;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.os.LocaleListCompat;
 
+import com.ensias.ihearu.eval.WordDictionary;
 import com.ensias.ihearu.util.LocaleUtils;
 
 import org.dicio.skill.standard.StandardRecognizerData;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
 public final class Sections {
 
+    public static final String TAG = Sections.class.getSimpleName();
+
     private Sections() {
     }
 
     private static Locale currentLocale = null;
     private static Map<String, StandardRecognizerData> sectionsMap = null;
+    private static Map<String, String[]> sectionKeywordsMap = null;
+    private static Map<String, String[]> sectionGrammarsMap = null;
+    private static WordDictionary wordDictionary = WordDictionary.EMPTY;
 
 
+    // only the sections and section tables of the chosen locale are loaded
     @NonNull
-    public static Locale setLocale(final LocaleListCompat availableLocales)
+    public static Locale setLocale(final Context context,
+                                   final LocaleListCompat availableLocales)
             throws LocaleUtils.UnsupportedLocaleException {
         final LocaleUtils.LocaleResolutionResult localeResolutionResult =
-                LocaleUtils.resolveSupportedLocale(availableLocales, localeSectionsMap.keySet());
-        sectionsMap = localeSectionsMap.get(localeResolutionResult.supportedLocaleString);
+                LocaleUtils.resolveSupportedLocale(toList(availableLocales),
+                        localeSectionsMap.keySet());
+        final String locale = localeResolutionResult.supportedLocaleString;
+        sectionsMap = localeSectionsMap.get(locale).get();
+
+        try (InputStream inputStream =
+                     context.getAssets().open(SectionTables.getAssetPath(locale))) {
+            final SectionTables sectionTables = SectionTables.read(inputStream);
+            sectionKeywordsMap = sectionTables.sectionKeywords;
+            sectionGrammarsMap = sectionTables.sectionGrammars;
+            wordDictionary = new WordDictionary(sectionTables.words);
+        } catch (final IOException e) {
+            // skills still work without keywords and grammars, they are just slower to evaluate
+            Log.e(TAG, "Could not load section tables for locale " + locale, e);
+            sectionKeywordsMap = null;
+            sectionGrammarsMap = null;
+            wordDictionary = WordDictionary.EMPTY;
+        }
+
         currentLocale = localeResolutionResult.availableLocale;
         return currentLocale;
     }
 
 
+    private static List<Locale> toList(final LocaleListCompat localeList) {
+        final List<Locale> locales = new ArrayList<>(localeList.size());
+        for (int i = 0; i < localeList.size(); ++i) {
+            locales.add(localeList.get(i));
+        }
+        return locales;
+    }
+
+
     @Nullable
     public static Locale getCurrentLocale() {
         return currentLocale;
@@ -49,4 +90,22 @@ public final class Sections {
     public static StandardRecognizerData getSection(final String sectionName) {
         return sectionsMap.get(sectionName);
     }
+
+    // section id -> words its sentences are made of, see SkillKeywordIndex
+    @Nullable
+    public static Map<String, String[]> getSectionKeywords() {
+        return sectionKeywordsMap;
+    }
+
+    // section id -> vocabulary, only for sections without capturing groups, see SkillGrammar
+    @Nullable
+    public static Map<String, String[]> getSectionGrammars() {
+        return sectionGrammarsMap;
+    }
+
+    // the words of the sections of the current locale, empty if the section tables are missing
+    @NonNull
+    public static WordDictionary getWordDictionary() {
+        return wordDictionary;
+    }
 }
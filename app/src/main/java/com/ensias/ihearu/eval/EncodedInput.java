@@ -0,0 +1,29 @@
+package com.ensias.ihearu.eval;
+
+import java.util.List;
+
+// An input split into words only once, with the words also converted to ids of a WordDictionary,
+// so that SkillKeywordIndex can compare ints instead of strings. The word lists are kept too,
+// since skills still need them in Skill.setInput(), and their recognizers still compare strings.
+public final class EncodedInput {
+
+    public final String input;
+    public final List<String> inputWords;
+    public final List<String> normalizedWordKeys;
+    // the id of every normalized word, or WordDictionary.UNKNOWN_WORD if not in the dictionary
+    public final int[] wordIds;
+
+    EncodedInput(final String input,
+                 final List<String> inputWords,
+                 final List<String> normalizedWordKeys,
+                 final int[] wordIds) {
+        this.input = input;
+        this.inputWords = inputWords;
+        this.normalizedWordKeys = normalizedWordKeys;
+        this.wordIds = wordIds;
+    }
+
+    public int size() {
+        return wordIds.length;
+    }
+}
@@ -0,0 +1,197 @@
+package com.ensias.ihearu.eval;
+
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.input.InputHypothesis;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+// Decides which input to evaluate next, making sure that only one evaluation runs at a time and
+// that every input is evaluated at most once. Inputs can be submitted from any thread, while
+// evaluations are started one by one on the consumer executor (i.e. the main thread), and the
+// evaluator has to call finish() exactly once per evaluation when it is done with it. Policies:
+// - an input received by voice supersedes the typed inputs which are still waiting, since the
+//   user has clearly moved on to something else; the running evaluation is never interrupted,
+//   though, whatever its source, since its skill may already be doing something for the user;
+// - at most MAX_WAITING_EVALUATIONS inputs wait, if more arrive the oldest waiting one is dropped,
+//   so that the assistant does not lag behind the user when skills are slower than queries.
+// Does not depend on the Android framework: the clock is passed in, and dropped evaluations are
+// reported to a listener, together with the reason why they were dropped.
+public final class EvaluationScheduler {
+
+    private static final int MAX_WAITING_EVALUATIONS = 3;
+
+    public enum Source {
+        SPEECH,
+        TYPED
+    }
+
+    // the stages of an evaluation, in order, each one with the time it was reached at
+    public enum Stage {
+        RECEIVED,
+        STARTED,
+        SKILL_CHOSEN,
+        PROCESSED,
+        FINISHED
+    }
+
+    public static final class Evaluation {
+        public final long id;
+        public final List<InputHypothesis> inputs;
+        public final Source source;
+        private final LongSupplier clock;
+        // the clock time when each stage was reached, 0 if not reached (yet); the stages are
+        // marked on different threads, and read on any thread
+        private final AtomicLongArray stageMillis = new AtomicLongArray(Stage.values().length);
+
+        Evaluation(final long id,
+                   final List<InputHypothesis> inputs,
+                   final Source source,
+                   final LongSupplier clock) {
+            this.id = id;
+            this.inputs = inputs;
+            this.source = source;
+            this.clock = clock;
+            mark(Stage.RECEIVED);
+        }
+
+        public void mark(final Stage stage) {
+            stageMillis.set(stage.ordinal(), clock.getAsLong());
+        }
+
+        // how long it took to go from one stage to another, or -1 if either was not reached
+        public long getMillisBetween(final Stage from, final Stage to) {
+            final long fromMillis = stageMillis.get(from.ordinal());
+            final long toMillis = stageMillis.get(to.ordinal());
+            return fromMillis == 0 || toMillis == 0 ? -1 : toMillis - fromMillis;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder()
+                    .append('#').append(id).append(' ').append(source);
+            for (int i = 1; i < stageMillis.length(); ++i) {
+                builder.append(' ').append(Stage.values()[i]).append('=')
+                        .append(getMillisBetween(Stage.RECEIVED, Stage.values()[i]))
+                        .append("ms");
+            }
+            return builder.toString();
+        }
+    }
+
+    // multiple producers, single consumer
+    private final Queue<Evaluation> waitingEvaluations = new ConcurrentLinkedQueue<>();
+    // null when idle, and the atomic flag deciding which thread gets to start the next evaluation
+    private final AtomicReference<Evaluation> runningEvaluation = new AtomicReference<>(null);
+    private final AtomicLong nextId = new AtomicLong(0);
+
+    private final Executor consumerExecutor;
+    private final Consumer<Evaluation> evaluationStarter;
+    private final BiConsumer<Evaluation, String> droppedEvaluationListener;
+    // must never return 0, e.g. SystemClock.elapsedRealtime()
+    private final LongSupplier clock;
+
+
+    // droppedEvaluationListener is called on the thread which submitted the input that caused
+    // the drop, with the reason of the drop
+    public EvaluationScheduler(final Executor consumerExecutor,
+                               final Consumer<Evaluation> evaluationStarter,
+                               final BiConsumer<Evaluation, String> droppedEvaluationListener,
+                               final LongSupplier clock) {
+        this.consumerExecutor = consumerExecutor;
+        this.evaluationStarter = evaluationStarter;
+        this.droppedEvaluationListener = droppedEvaluationListener;
+        this.clock = clock;
+    }
+
+    // can be called from any thread
+    public void submit(final List<InputHypothesis> inputs, final Source source) {
+        if (source == Source.SPEECH) {
+            dropWaiting(evaluation -> evaluation.source == Source.TYPED,
+                    "superseded by speech input");
+        }
+        waitingEvaluations.add(new Evaluation(nextId.getAndIncrement(), inputs, source, clock));
+
+        while (waitingEvaluations.size() > MAX_WAITING_EVALUATIONS) {
+            @Nullable final Evaluation oldest = waitingEvaluations.poll();
+            if (oldest != null) {
+                droppedEvaluationListener.accept(oldest, "too many inputs waiting");
+            }
+        }
+
+        startNextIfIdle();
+    }
+
+    // To be called when the evaluation is over, whether it succeeded or not. Calls for an
+    // evaluation which is not the running one (e.g. a second call) are ignored and return false,
+    // so that the next evaluation is never started twice.
+    public boolean finish(final Evaluation evaluation) {
+        if (!runningEvaluation.compareAndSet(evaluation, null)) {
+            return false;
+        }
+
+        evaluation.mark(Stage.FINISHED);
+        startNextIfIdle();
+        return true;
+    }
+
+    // true if an evaluation has been started and has not finished yet
+    public boolean isBusy() {
+        return runningEvaluation.get() != null;
+    }
+
+    // drops all of the waiting evaluations and forgets about the running one, if any, whose
+    // finish() will then be ignored
+    public void cancelAll() {
+        waitingEvaluations.clear();
+        runningEvaluation.set(null);
+    }
+
+
+    private void dropWaiting(final Predicate<Evaluation> predicate, final String reason) {
+        final Iterator<Evaluation> iterator = waitingEvaluations.iterator();
+        while (iterator.hasNext()) {
+            final Evaluation evaluation = iterator.next();
+            if (predicate.test(evaluation)) {
+                iterator.remove();
+                droppedEvaluationListener.accept(evaluation, reason);
+            }
+        }
+    }
+
+    private void startNextIfIdle() {
+        while (true) {
+            @Nullable final Evaluation next = waitingEvaluations.peek();
+            if (next == null) {
+                return;
+            }
+            if (!runningEvaluation.compareAndSet(null, next)) {
+                return; // busy: the next evaluation is started by finish()
+            }
+
+            // this thread won the right to start an evaluation, but another thread may have
+            // removed `next` in the meantime, so check that it is still the head of the queue
+            if (waitingEvaluations.remove(next)) {
+                next.mark(Stage.STARTED);
+                consumerExecutor.execute(() -> {
+                    if (runningEvaluation.get() == next) { // i.e. not cancelled in the meantime
+                        evaluationStarter.accept(next);
+                    }
+                });
+                return;
+            }
+            runningEvaluation.compareAndSet(next, null);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.ensias.ihearu.eval;
+
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.input.InputHypothesis;
+import org.dicio.skill.Skill;
+import org.dicio.skill.util.CleanableUp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+// Scores all of the alternatives provided by an input device (e.g. the N-best list from Vosk)
+// concurrently on a bounded pool of workers. Skill.setInput() is stateful, so every worker uses
+// its own ranker, built with its own isolated skill instances.
+public class ParallelSkillScorer implements CleanableUp {
+
+    private static final int MAX_WORKERS = 4;
+
+    private final ExecutorService executor;
+    private final BlockingQueue<SkillRanker> idleRankers;
+    private final List<SkillRanker> allRankers;
+    private final int rankerCount;
+
+
+    // isolatedRankerSupplier has to build a new ranker with new skill instances at every call
+    public ParallelSkillScorer(final Supplier<SkillRanker> isolatedRankerSupplier) {
+        final int workers = Math.max(1,
+                Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors()));
+        executor = Executors.newFixedThreadPool(workers);
+        rankerCount = workers;
+        idleRankers = new ArrayBlockingQueue<>(workers);
+        allRankers = new ArrayList<>(workers);
+        for (int i = 0; i < workers; ++i) {
+            allRankers.add(isolatedRankerSupplier.get());
+        }
+        idleRankers.addAll(allRankers);
+    }
+
+    // returns the result with the highest score, fused with the recognizer confidence as in
+    // SkillRanker.getBestFused() (the first alternative wins ties, since input devices provide
+    // the most likely ones first), or null if no alternative matched any skill
+    @Nullable
+    public SkillRanker.FusedResult scoreAll(final List<InputHypothesis> inputs)
+            throws InterruptedException, ExecutionException {
+        final float[] acousticWeights = SkillRanker.getAcousticWeights(inputs);
+        final List<Callable<SkillRanker.FusedResult>> tasks = new ArrayList<>(inputs.size());
+        for (int i = 0; i < inputs.size(); ++i) {
+            final String input = inputs.get(i).text;
+            final float acousticWeight = acousticWeights[i];
+            tasks.add(() -> score(input, acousticWeight));
+        }
+
+        SkillRanker.FusedResult best = null;
+        for (final Future<SkillRanker.FusedResult> future : executor.invokeAll(tasks)) {
+            final SkillRanker.FusedResult candidate = future.get();
+            if (candidate == null) {
+                continue;
+            }
+
+            // with more alternatives than rankers, a ranker scores more than one alternative, so
+            // two candidates may hold the same skill instance, which must not be cleaned up
+            if (best == null || candidate.fusedScore > best.fusedScore) {
+                if (best != null && best.result.skill != candidate.result.skill) {
+                    best.result.cleanup();
+                }
+                best = candidate;
+            } else if (best.result.skill != candidate.result.skill) {
+                candidate.result.cleanup();
+            }
+        }
+
+        if (best != null && inputs.size() > rankerCount) {
+            // the input of the chosen skill might have been overwritten by later alternatives
+            // scored with the same skill instance (or cleaned up), so set it again
+            best.result.skill.setInput(best.input, best.inputWords, best.normalizedWordKeys);
+            best.result.skill.score();
+        }
+        return best;
+    }
+
+    @Nullable
+    private SkillRanker.FusedResult score(final String input, final float acousticWeight)
+            throws InterruptedException {
+        // there are as many rankers as workers, so this blocks only if a previous evaluation was
+        // cancelled and some of its tasks are still running
+        final SkillRanker ranker = idleRankers.take();
+        try {
+            final EncodedInput encodedInput = ranker.encode(input);
+            @Nullable final SkillRanker.SkillScoreResult result
+                    = ranker.getBestWithScore(encodedInput);
+            if (result == null || result.skill == null) {
+                return null;
+            }
+            return new SkillRanker.FusedResult(encodedInput, result,
+                    SkillRanker.fuseScore(result, acousticWeight));
+        } finally {
+            idleRankers.add(ranker);
+        }
+    }
+
+    // the skills all of the rankers were built with, see SkillRanker.getOwnSkills(); the chosen
+    // skill of the last scoreAll() is among them, so they can be reused only once it is not used
+    public List<Skill> getOwnSkills() {
+        final List<Skill> ownSkills = new ArrayList<>();
+        for (final SkillRanker ranker : allRankers) {
+            ownSkills.addAll(ranker.getOwnSkills());
+        }
+        return ownSkills;
+    }
+
+    @Override
+    public void cleanup() {
+        executor.shutdownNow();
+        for (final SkillRanker ranker : idleRankers) {
+            ranker.cleanup();
+        }
+        idleRankers.clear();
+    }
+}
@@ -2,8 +2,10 @@ package com.ensias.ihearu.eval;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.util.Log;
 import android.view.View;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.LinearLayout;
@@ -17,12 +19,15 @@ import androidx.appcompat.widget.AppCompatTextView;
 import androidx.core.app.ActivityCompat;
 
 import com.ensias.ihearu.input.InputDevice;
+import com.ensias.ihearu.input.InputHypothesis;
 import com.ensias.ihearu.input.SpeechInputDevice;
 import com.ensias.ihearu.input.ToolbarInputDevice;
 import com.ensias.ihearu.output.graphical.GraphicalOutputUtils;
 import com.ensias.ihearu.skills.SkillHandler;
+import com.ensias.ihearu.util.ConnectionUtils;
 import com.ensias.ihearu.util.ExceptionUtils;
 import com.ensias.ihearu.util.PermissionUtils;
+import com.ensias.ihearu.BuildConfig;
 import com.ensias.ihearu.MainActivity;
 import com.ensias.ihearu.R;
 import org.dicio.skill.Skill;
@@ -32,11 +37,10 @@ import org.dicio.skill.output.SpeechOutputDevice;
 import org.dicio.skill.util.CleanableUp;
 import org.dicio.skill.util.WordExtractor;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.function.Supplier;
+import java.util.concurrent.Callable;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Single;
@@ -45,22 +49,42 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class SkillEvaluator implements CleanableUp {
 
+    public static final String TAG = SkillEvaluator.class.getSimpleName();
+
     private final SkillRanker skillRanker;
+    @Nullable private final ParallelSkillScorer parallelSkillScorer;
+    @Nullable private final SpeculativeSkillMatcher speculativeSkillMatcher;
     private final InputDevice primaryInputDevice;
     @Nullable private final ToolbarInputDevice secondaryInputDevice;
     private final SpeechOutputDevice speechOutputDevice;
     private final GraphicalOutputDevice graphicalOutputDevice;
     private Activity activity;
 
-    private boolean currentlyProcessingInput = false;
-    private final Queue<List<String>> queuedInputs = new LinkedList<>();
+    // evaluations are started on the main thread, like everything else in this class
+    private final EvaluationScheduler evaluationScheduler = new EvaluationScheduler(
+            runnable -> AndroidSchedulers.mainThread().scheduleDirect(runnable),
+            this::evaluateMatchingSkill,
+            (evaluation, reason) -> Log.w(TAG, "Dropped evaluation " + evaluation + ": " + reason),
+            SystemClock::elapsedRealtime);
     @Nullable private View partialInputView = null;
     private boolean hasAddedPartialInputView = false;
     @Nullable private Disposable evaluationDisposable = null;
     @Nullable private Skill skillNeedingPermissions = null;
+    @Nullable private EvaluationScheduler.Evaluation evaluationNeedingPermissions = null;
+    // the skill of the running evaluation, if it was claimed from the speculative skill matcher,
+    // which has to be given back to the pool once the evaluation is over
+    @Nullable private Skill claimedSkill = null;
+    // Disposing an evaluation does not wait for its step running in the background, if any, which
+    // may still be using the skills: in that case the skills are given back to the pool by the
+    // step itself, once done, instead of by cleanup(). Non-null once cleaned up.
+    private final Object backgroundStepLock = new Object();
+    private boolean backgroundStepRunning = false;
+    @Nullable private List<Skill> skillsToRelease = null;
 
 
     public SkillEvaluator(final SkillRanker skillRanker,
+                          @Nullable final ParallelSkillScorer parallelSkillScorer,
+                          @Nullable final SpeculativeSkillMatcher speculativeSkillMatcher,
                           final InputDevice primaryInputDevice,
                           @Nullable final ToolbarInputDevice secondaryInputDevice,
                           final SpeechOutputDevice speechOutputDevice,
@@ -68,6 +92,8 @@ public class SkillEvaluator implements CleanableUp {
                           final Activity activity) {
 
         this.skillRanker = skillRanker;
+        this.parallelSkillScorer = parallelSkillScorer;
+        this.speculativeSkillMatcher = speculativeSkillMatcher;
         this.primaryInputDevice = primaryInputDevice;
         this.secondaryInputDevice = secondaryInputDevice;
         this.speechOutputDevice = speechOutputDevice;
@@ -104,12 +130,34 @@ public class SkillEvaluator implements CleanableUp {
     @Override
     public void cleanup() {
         cancelGettingInput();
+        // the skills can be reused by the next evaluator, once no evaluation step uses them
+        final List<Skill> ownSkills = new ArrayList<>(skillRanker.getOwnSkills());
+        if (parallelSkillScorer != null) {
+            ownSkills.addAll(parallelSkillScorer.getOwnSkills());
+        }
+        if (claimedSkill != null) {
+            ownSkills.add(claimedSkill);
+            claimedSkill = null;
+        }
+        synchronized (backgroundStepLock) {
+            skillsToRelease = ownSkills;
+            if (!backgroundStepRunning) {
+                releaseSkillsOfCleanedUpEvaluator();
+            }
+        }
         skillRanker.cleanup();
+        if (parallelSkillScorer != null) {
+            parallelSkillScorer.cleanup();
+        }
 
         primaryInputDevice.cleanup();
         if (secondaryInputDevice != null) {
             secondaryInputDevice.cleanup();
         }
+        if (speculativeSkillMatcher != null) {
+            // after the input devices, so that no more partial inputs are received
+            speculativeSkillMatcher.cleanup();
+        }
         speechOutputDevice.cleanup();
         graphicalOutputDevice.cleanup();
         activity = null;
@@ -118,7 +166,8 @@ public class SkillEvaluator implements CleanableUp {
             evaluationDisposable.dispose();
         }
         skillNeedingPermissions = null;
-        queuedInputs.clear();
+        evaluationNeedingPermissions = null;
+        evaluationScheduler.cancelAll();
         partialInputView = null;
     }
 
@@ -129,6 +178,21 @@ public class SkillEvaluator implements CleanableUp {
         }
     }
 
+    public void onPause() {
+        primaryInputDevice.onPause();
+        if (secondaryInputDevice != null) {
+            secondaryInputDevice.onPause();
+        }
+        cancelGettingInput();
+    }
+
+    public void onResume() {
+        primaryInputDevice.onResume();
+        if (secondaryInputDevice != null) {
+            secondaryInputDevice.onResume();
+        }
+    }
+
     public InputDevice getPrimaryInputDevice() {
         return primaryInputDevice;
     }
@@ -142,21 +206,17 @@ public class SkillEvaluator implements CleanableUp {
      * to be called from the main thread
      */
     public void onSkillRequestPermissionsResult(@NonNull final int[] grantResults) {
-        if (skillNeedingPermissions == null) {
+        if (skillNeedingPermissions == null || evaluationNeedingPermissions == null) {
             return; // should be unreachable
         }
         final Skill skill = skillNeedingPermissions;
+        final EvaluationScheduler.Evaluation evaluation = evaluationNeedingPermissions;
         // make sure this skill is not reprocessed (also should never happen, but who knows)
         skillNeedingPermissions = null;
+        evaluationNeedingPermissions = null;
 
         if (PermissionUtils.areAllPermissionsGranted(grantResults)) {
-            evaluationDisposable = Single.fromCallable(() -> {
-                skill.processInput();
-                return skill;
-            })
-            .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread())
-            .subscribe(this::generateOutput, this::onError);
+            processInputAndGenerateOutput(evaluation, skill);
 
         } else {
             // permissions were not granted, show a message
@@ -172,13 +232,17 @@ public class SkillEvaluator implements CleanableUp {
             }
 
             graphicalOutputDevice.addDivider();
-            finishedProcessingInput();
+            finishEvaluation(evaluation);
         }
     }
 
 
 
     private void setupInputDeviceListeners() {
+        // the primary input device may also be the toolbar, if speech input is disabled
+        final EvaluationScheduler.Source primarySource
+                = primaryInputDevice instanceof SpeechInputDevice
+                ? EvaluationScheduler.Source.SPEECH : EvaluationScheduler.Source.TYPED;
         primaryInputDevice.setInputDeviceListener(new InputDevice.InputDeviceListener() {
             @Override
             public void onTryingToGetInput() {
@@ -186,16 +250,27 @@ public class SkillEvaluator implements CleanableUp {
                 if (secondaryInputDevice != null) {
                     secondaryInputDevice.cancelGettingInput();
                 }
+                if (speculativeSkillMatcher != null) {
+                    speculativeSkillMatcher.reset();
+                }
             }
 
             @Override
             public void onPartialInputReceived(final String input) {
                 displayPartialUserInput(input);
+                if (speculativeSkillMatcher != null) {
+                    speculativeSkillMatcher.onPartialInput(input);
+                }
             }
 
             @Override
             public void onInputReceived(final List<String> input) {
-                processInput(input);
+                processInput(InputHypothesis.withoutConfidence(input), primarySource);
+            }
+
+            @Override
+            public void onScoredInputReceived(final List<InputHypothesis> input) {
+                processInput(input, primarySource);
             }
 
             @Override
@@ -205,7 +280,7 @@ public class SkillEvaluator implements CleanableUp {
 
             @Override
             public void onError(final Throwable e) {
-                SkillEvaluator.this.onError(e);
+                SkillEvaluator.this.onError(null, e);
             }
         });
 
@@ -215,6 +290,9 @@ public class SkillEvaluator implements CleanableUp {
                 public void onTryingToGetInput() {
                     speechOutputDevice.stopSpeaking();
                     primaryInputDevice.cancelGettingInput();
+                    if (speculativeSkillMatcher != null) {
+                        speculativeSkillMatcher.reset();
+                    }
                 }
 
                 @Override
@@ -224,7 +302,13 @@ public class SkillEvaluator implements CleanableUp {
 
                 @Override
                 public void onInputReceived(final List<String> input) {
-                    processInput(input);
+                    processInput(InputHypothesis.withoutConfidence(input),
+                            EvaluationScheduler.Source.TYPED);
+                }
+
+                @Override
+                public void onScoredInputReceived(final List<InputHypothesis> input) {
+                    processInput(input, EvaluationScheduler.Source.TYPED);
                 }
 
 
@@ -235,7 +319,7 @@ public class SkillEvaluator implements CleanableUp {
 
                 @Override
                 public void onError(final Throwable e) {
-                    SkillEvaluator.this.onError(e);
+                    SkillEvaluator.this.onError(null, e);
                 }
             });
         }
@@ -266,25 +350,10 @@ public class SkillEvaluator implements CleanableUp {
 
 
 
-    private void processInput(final List<String> input) {
+    private void processInput(final List<InputHypothesis> input,
+                              final EvaluationScheduler.Source source) {
         hasAddedPartialInputView = false;
-        queuedInputs.add(input);
-        tryToProcessQueuedInput();
-    }
-
-    private void finishedProcessingInput() {
-        queuedInputs.poll(); // current input has finished processing
-        currentlyProcessingInput = false;
-        tryToProcessQueuedInput(); // try to process next input, if present
-    }
-
-    private void tryToProcessQueuedInput() {
-        if (currentlyProcessingInput || queuedInputs.isEmpty()) {
-            return;
-        }
-
-        currentlyProcessingInput = true;
-        evaluateMatchingSkill(queuedInputs.peek());
+        evaluationScheduler.submit(input, source);
     }
 
     private void displayUserInput(final String input) {
@@ -328,7 +397,9 @@ public class SkillEvaluator implements CleanableUp {
                     if (s.length() > startIndex && s.charAt(startIndex) == '\n') {
                         s.delete(startIndex, startIndex + 1);
                         if (!s.toString().trim().equals(input.trim())) {
-                            processInput(Collections.singletonList(s.toString()));
+                            processInput(Collections.singletonList(
+                                    new InputHypothesis(s.toString(), Float.NaN)),
+                                    EvaluationScheduler.Source.TYPED);
                             inputEditText.setText(input); // restore original input
                             inputEditText.clearFocus(); // prevent focus problems
                         }
@@ -376,6 +447,7 @@ public class SkillEvaluator implements CleanableUp {
         final String input;
         final Skill skill;
         String[] permissionsToRequest = null;
+        boolean claimed = false;
 
         InputSkillPair(final String input, final Skill skill) {
             this.input = input;
@@ -383,82 +455,189 @@ public class SkillEvaluator implements CleanableUp {
         }
     }
 
-    private void evaluateMatchingSkill(final List<String> inputs) {
-        if (evaluationDisposable != null && !evaluationDisposable.isDisposed()) {
-            evaluationDisposable.dispose();
-        }
-
-        evaluationDisposable = Single.fromCallable(() -> {
-            final InputSkillPair chosen = inputs.stream()
-                    .map(input -> {
-                        final List<String> inputWords = WordExtractor.extractWords(input);
-                        final List<String> normalizedWords
-                                = WordExtractor.normalizeWords(inputWords);
-                        return new InputSkillPair(input,
-                                skillRanker.getBest(input, inputWords, normalizedWords));
-                    })
-                    .filter(inputSkillPair -> inputSkillPair.skill != null)
-                    .findFirst()
-                    .orElseGet((Supplier<InputSkillPair>) (() -> {
-                        final List<String> inputWords = WordExtractor.extractWords(inputs.get(0));
-                        final List<String> normalizedWords
-                                = WordExtractor.normalizeWords(inputWords);
-                        return new InputSkillPair(inputs.get(0), skillRanker.getFallbackSkill(
-                                inputs.get(0), inputWords, normalizedWords));
-                    }));
+    private void evaluateMatchingSkill(final EvaluationScheduler.Evaluation evaluation) {
+        // the scheduler starts an evaluation only once the previous one has finished, so there is
+        // never a previous evaluation to dispose of here
+        final List<InputHypothesis> inputs = evaluation.inputs;
+        evaluationDisposable = inBackground(() -> {
+            // the speculated skill was chosen among the default batch only, and claiming can
+            // only succeed if the batch has a skill which can surely be chosen without ranking
+            // (the speculative ranker is built from the same skill infos as this one)
+            @Nullable final Skill speculatedSkill
+                    = speculativeSkillMatcher != null && skillRanker.hasSurelyBestCandidate()
+                    ? speculativeSkillMatcher.claim(inputs) : null;
+
+            final InputSkillPair chosen;
+            if (speculatedSkill != null) {
+                // the skill already matched the partial input, so it has been prewarmed
+                chosen = new InputSkillPair(inputs.get(0).text, speculatedSkill);
+                chosen.claimed = true;
+            } else if (parallelSkillScorer != null && inputs.size() > 1
+                    && skillRanker.hasOnlyDefaultBatch()) {
+                // follow-up batches contain skill instances that cannot be rebuilt, so scoring in
+                // parallel is possible only when the default batch is being used
+                chosen = chooseSkillInParallel(parallelSkillScorer, inputs);
+            } else {
+                chosen = chooseSkillSequentially(inputs);
+            }
 
             final String[] permissions = PermissionUtils.permissionsArrayFromSkill(chosen.skill);
-            if (PermissionUtils.checkPermissions(activity, permissions)) {
-                // skill's output will be generated below, so process input now
-                chosen.skill.processInput();
-            } else {
-                // before executing this skill needs some permissions, don't process input now
+            if (!PermissionUtils.checkPermissions(activity, permissions)) {
+                // before executing this skill needs some permissions, don't process input yet
                 chosen.permissionsToRequest = permissions;
             }
 
+            evaluation.mark(EvaluationScheduler.Stage.SKILL_CHOSEN);
             return chosen;
         })
-                .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(this::onChosenSkill, this::onError);
+                .subscribe(chosen -> onChosenSkill(evaluation, chosen),
+                        t -> onError(evaluation, t));
+    }
+
+    // Runs a step of the evaluation which uses the skills on a background thread, see
+    // skillsToRelease. Steps started after cleanup() fail without touching the skills. Errors
+    // happening once the evaluation has been disposed (e.g. because its requests were cancelled)
+    // are dropped, since there is nobody to notify anymore.
+    private <T> Single<T> inBackground(final Callable<T> step) {
+        return Single.<T>create(emitter -> {
+            synchronized (backgroundStepLock) {
+                if (skillsToRelease != null) {
+                    emitter.tryOnError(
+                            new InterruptedException("Skill evaluator already cleaned up"));
+                    return;
+                }
+                backgroundStepRunning = true;
+            }
+            try {
+                emitter.onSuccess(step.call());
+            } catch (final Exception e) {
+                emitter.tryOnError(e);
+            } finally {
+                synchronized (backgroundStepLock) {
+                    backgroundStepRunning = false;
+                    if (skillsToRelease != null) {
+                        releaseSkillsOfCleanedUpEvaluator();
+                    }
+                }
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    // to be called with backgroundStepLock held, after cleanup()
+    private void releaseSkillsOfCleanedUpEvaluator() {
+        SkillHandler.releaseSkills(skillsToRelease);
+        skillsToRelease = Collections.emptyList();
+    }
+
+    private InputSkillPair chooseSkillSequentially(final List<InputHypothesis> inputs) {
+        // all alternatives are considered, weighed by the confidence of the recognizer
+        @Nullable final SkillRanker.FusedResult best = skillRanker.getBestFused(inputs);
+        if (best == null) {
+            return buildFallbackPair(inputs);
+        }
+        return new InputSkillPair(best.input, best.result.skill);
+    }
+
+    private InputSkillPair chooseSkillInParallel(final ParallelSkillScorer scorer,
+                                                 final List<InputHypothesis> inputs)
+            throws Exception {
+        @Nullable final SkillRanker.FusedResult best = scorer.scoreAll(inputs);
+        if (best == null) {
+            return buildFallbackPair(inputs);
+        }
+        return new InputSkillPair(best.input, best.result.skill);
     }
 
-    private void onChosenSkill(final InputSkillPair chosen) {
+    private InputSkillPair buildFallbackPair(final List<InputHypothesis> inputs) {
+        final String input = inputs.get(0).text;
+        final List<String> inputWords = WordExtractor.extractWords(input);
+        final List<String> normalizedWords = WordExtractor.normalizeWords(inputWords);
+        return new InputSkillPair(input, skillRanker.getFallbackSkill(
+                input, inputWords, normalizedWords));
+    }
+
+    private void onChosenSkill(final EvaluationScheduler.Evaluation evaluation,
+                               final InputSkillPair chosen) {
+        // display the user input right away, since skills may start displaying their output
+        // already while processing input (e.g. search results as they are downloaded)
         displayUserInput(chosen.input);
+        if (chosen.claimed) {
+            claimedSkill = chosen.skill;
+        }
 
         if (chosen.permissionsToRequest == null) {
-            generateOutput(chosen.skill);
+            processInputAndGenerateOutput(evaluation, chosen.skill);
         } else {
             // request permissions; when done process input in onSkillRequestPermissionsResult
             ActivityCompat.requestPermissions(activity, chosen.permissionsToRequest,
                     MainActivity.SKILL_PERMISSIONS_REQUEST_CODE);
             skillNeedingPermissions = chosen.skill;
+            evaluationNeedingPermissions = evaluation;
         }
     }
 
-    private void generateOutput(final Skill skill) {
+    private void processInputAndGenerateOutput(final EvaluationScheduler.Evaluation evaluation,
+                                               final Skill skill) {
+        final ConnectionUtils.RequestGroup requests = new ConnectionUtils.RequestGroup();
+        evaluationDisposable = inBackground(() -> ConnectionUtils.runInGroup(requests, () -> {
+            skill.processInput();
+            evaluation.mark(EvaluationScheduler.Stage.PROCESSED);
+            return skill;
+        }))
+                .observeOn(AndroidSchedulers.mainThread())
+                // stop network requests made by the skill if the evaluation is not needed anymore
+                .doOnDispose(requests::cancel)
+                .subscribe(processedSkill -> generateOutput(evaluation, processedSkill),
+                        t -> onError(evaluation, t));
+    }
+
+    private void generateOutput(final EvaluationScheduler.Evaluation evaluation,
+                                final Skill skill) {
         skill.generateOutput();
 
         final List<Skill> nextSkills = skill.nextSkills();
         if (nextSkills == null || nextSkills.isEmpty()) {
             // current conversation has ended, reset to the default batch of skills
             skillRanker.removeAllBatches();
+            primaryInputDevice.setVocabularyHint(null);
             graphicalOutputDevice.addDivider();
         } else {
+            for (final Skill nextSkill : nextSkills) {
+                // set the context to the enqueued skills
+                nextSkill.setContext(SkillHandler.getSkillContext());
+            }
             skillRanker.addBatchToTop(nextSkills);
+            // e.g. when the skill asked a yes/no question only a few words can be understood
+            primaryInputDevice.setVocabularyHint(skillRanker.getTopBatchGrammar());
             speechOutputDevice.runWhenFinishedSpeaking(
                     () -> activity.runOnUiThread(
                             () -> primaryInputDevice.tryToGetInput(false)));
         }
 
         skill.cleanup(); // cleanup the input that was set
-        finishedProcessingInput();
+        finishEvaluation(evaluation);
+    }
+
+    // to be called on the main thread when an evaluation is over, whether it succeeded or not
+    private void finishEvaluation(final EvaluationScheduler.Evaluation evaluation) {
+        if (claimedSkill != null) {
+            SkillHandler.releaseSkills(Collections.singletonList(claimedSkill));
+            claimedSkill = null;
+        }
+        if (!evaluationScheduler.finish(evaluation)) {
+            Log.w(TAG, "Ignoring finish of evaluation which is not running " + evaluation);
+        } else if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Finished evaluation " + evaluation);
+        }
     }
 
 
  //On error
 
-    private void onError(final Throwable t) {
+    // evaluation is null if the error comes from an input device, and not from an evaluation
+    private void onError(@Nullable final EvaluationScheduler.Evaluation evaluation,
+                         final Throwable t) {
         t.printStackTrace();
 
         if (ExceptionUtils.hasAssignableCause(t, SpeechInputDevice.UnableToAccessMicrophoneException.class)) {
@@ -471,11 +650,14 @@ public class SkillEvaluator implements CleanableUp {
             graphicalOutputDevice.display(GraphicalOutputUtils.buildNetworkErrorMessage(activity));
         } else {
             skillRanker.removeAllBatches();
+            primaryInputDevice.setVocabularyHint(null);
             speechOutputDevice.speak(activity.getString(R.string.eval_fatal_error));
             graphicalOutputDevice.display(GraphicalOutputUtils.buildErrorMessage(activity, t));
         }
         graphicalOutputDevice.addDivider();
 
-        finishedProcessingInput();
+        if (evaluation != null) {
+            finishEvaluation(evaluation);
+        }
     }
 }
@@ -0,0 +1,87 @@
+package com.ensias.ihearu.eval;
+
+import androidx.annotation.Nullable;
+
+import org.dicio.skill.Skill;
+import org.dicio.skill.SkillInfo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+// The vocabulary a batch of skills can understand, if it is closed, i.e. if none of the skills
+// accepts arbitrary words (e.g. in capturing groups). Speech recognizers can then be restricted to
+// that vocabulary, which makes recognition faster and more accurate.
+public final class SkillGrammar {
+
+    public interface Provider {
+        // returns all of the words the skill can match, or null if it can match any word
+        @Nullable
+        String[] getGrammar(Skill skill);
+    }
+
+    // The section recognized by skills built with withSection(), e.g. follow-up skills, which
+    // have no skill info to find their section by. Weak, since the skills are not kept anyway.
+    private static final Map<Skill, String> SKILL_SECTION_IDS = new WeakHashMap<>();
+
+    private SkillGrammar() {
+    }
+
+    // to be called on skills whose recognizer only matches the section with this id, so that
+    // fromSectionGrammars() can find their vocabulary; returns the skill itself
+    public static Skill withSection(final Skill skill, final String sectionId) {
+        synchronized (SKILL_SECTION_IDS) {
+            SKILL_SECTION_IDS.put(skill, sectionId);
+        }
+        return skill;
+    }
+
+    // returns the union of the vocabularies of the skills, or null if any of them is not closed
+    @Nullable
+    public static String[] ofBatch(final List<Skill> skills, @Nullable final Provider provider) {
+        if (provider == null || skills.isEmpty()) {
+            return null;
+        }
+
+        final TreeSet<String> words = new TreeSet<>();
+        for (final Skill skill : skills) {
+            @Nullable final String[] skillWords = provider.getGrammar(skill);
+            if (skillWords == null) {
+                return null;
+            }
+            for (final String word : skillWords) {
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    // The vocabularies come from the compiled sections (see SectionTables.sectionGrammars).
+    // Skills are associated to the section set with withSection(), if any, or else to the section
+    // with the same id as their skill info, like in SkillKeywordIndex.
+    @Nullable
+    public static Provider fromSectionGrammars(
+            @Nullable final Map<String, String[]> sectionGrammars) {
+        if (sectionGrammars == null) {
+            return null;
+        }
+
+        return skill -> {
+            @Nullable final String sectionId = getSectionId(skill);
+            return sectionId == null ? null : sectionGrammars.get(sectionId);
+        };
+    }
+
+    @Nullable
+    private static String getSectionId(final Skill skill) {
+        synchronized (SKILL_SECTION_IDS) {
+            @Nullable final String sectionId = SKILL_SECTION_IDS.get(skill);
+            if (sectionId != null) {
+                return sectionId;
+            }
+        }
+        @Nullable final SkillInfo skillInfo = skill.getSkillInfo();
+        return skillInfo == null ? null : skillInfo.getId();
+    }
+}
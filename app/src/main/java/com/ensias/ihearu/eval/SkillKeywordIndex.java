@@ -0,0 +1,138 @@
+package com.ensias.ihearu.eval;
+
+import androidx.annotation.Nullable;
+
+import org.dicio.skill.Skill;
+import org.dicio.skill.SkillInfo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Inverted index from normalized word keys to the skills (by position in the list) whose sentences
+// contain them, shared by all of the specificity categories of a batch, so that the input words
+// are looked up only once per batch. A skill none of whose words appear in the input can't score
+// above any threshold, so it does not need to be scored at all. Skills without known words are
+// always candidates. This only prunes candidates: the remaining skills are still scored one by one
+// by their own recognizers, in the order of the batch, so ranking chooses the same skill it would
+// choose by scoring all of them. Postings are looked up by word id (see WordDictionary), so no
+// string is hashed while matching; keywords which are not in the dictionary are looked up by
+// string instead.
+public class SkillKeywordIndex {
+
+    public interface KeywordsProvider {
+        // returns the words the skill's sentences are made of, or null if they are unknown or if
+        // the skill could match even without any of them
+        @Nullable
+        String[] getKeywords(Skill skill);
+    }
+
+    private static final int[] NO_SKILLS = new int[0];
+
+    // indexed by word id, the positions of the skills using each word
+    private final int[][] skillsById;
+    private final Map<String, int[]> unknownWordSkills = new HashMap<>();
+    private final BitSet alwaysCandidates = new BitSet();
+
+
+    public SkillKeywordIndex(final List<Skill> skills,
+                             @Nullable final KeywordsProvider keywordsProvider,
+                             final WordDictionary wordDictionary) {
+        final BitSet[] postingsById = new BitSet[wordDictionary.size()];
+        final Map<String, BitSet> unknownWordPostings = new HashMap<>();
+        for (int i = 0; i < skills.size(); ++i) {
+            @Nullable final String[] keywords = keywordsProvider == null
+                    ? null : keywordsProvider.getKeywords(skills.get(i));
+            if (keywords == null) {
+                alwaysCandidates.set(i);
+                continue;
+            }
+
+            for (final String keyword : keywords) {
+                final String wordKey = WordDictionary.normalize(keyword);
+                final int wordId = wordDictionary.getId(wordKey);
+                if (wordId == WordDictionary.UNKNOWN_WORD) {
+                    unknownWordPostings.computeIfAbsent(wordKey, k -> new BitSet()).set(i);
+                } else {
+                    if (postingsById[wordId] == null) {
+                        postingsById[wordId] = new BitSet();
+                    }
+                    postingsById[wordId].set(i);
+                }
+            }
+        }
+
+        // arrays are faster to iterate than bitsets, and skills appear only once per word
+        skillsById = new int[postingsById.length][];
+        for (int i = 0; i < postingsById.length; ++i) {
+            skillsById[i] = postingsById[i] == null ? NO_SKILLS : toArray(postingsById[i]);
+        }
+        for (final Map.Entry<String, BitSet> entry : unknownWordPostings.entrySet()) {
+            unknownWordSkills.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    // Returns the positions of the skills that could possibly match the input, which has to be
+    // encoded with the same dictionary this index was built with.
+    public BitSet getPossibleMatches(final EncodedInput input) {
+        final BitSet possibleMatches = (BitSet) alwaysCandidates.clone();
+        for (int i = 0; i < input.wordIds.length; ++i) {
+            final int[] skillsWithWord;
+            if (input.wordIds[i] != WordDictionary.UNKNOWN_WORD) {
+                skillsWithWord = skillsById[input.wordIds[i]];
+            } else if (unknownWordSkills.isEmpty()) {
+                continue;
+            } else {
+                skillsWithWord = unknownWordSkills.getOrDefault(
+                        input.normalizedWordKeys.get(i).toLowerCase(Locale.ROOT), NO_SKILLS);
+            }
+
+            for (final int skill : skillsWithWord) {
+                possibleMatches.set(skill);
+            }
+        }
+        return possibleMatches;
+    }
+
+    // Returns the positions among the given ones which are also in possibleMatches (obtained from
+    // getPossibleMatches()), keeping their order.
+    public static int[] getCandidates(final int[] positions, final BitSet possibleMatches) {
+        final int[] candidates = new int[positions.length];
+        int count = 0;
+        for (final int position : positions) {
+            if (possibleMatches.get(position)) {
+                candidates[count++] = position;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+
+    // The words come from the compiled sections (see SectionTables.sectionKeywords), and skills
+    // are associated to the section with the same id as their skill info.
+    @Nullable
+    public static KeywordsProvider fromSectionKeywords(
+            @Nullable final Map<String, String[]> sectionKeywords) {
+        if (sectionKeywords == null) {
+            return null;
+        }
+
+        return skill -> {
+            @Nullable final SkillInfo skillInfo = skill.getSkillInfo();
+            // a section may also be explicitly mapped to null, if it can match without words
+            return skillInfo == null ? null : sectionKeywords.get(skillInfo.getId());
+        };
+    }
+
+    private static int[] toArray(final BitSet bitSet) {
+        final int[] result = new int[bitSet.cardinality()];
+        int j = 0;
+        for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+            result[j++] = i;
+        }
+        return result;
+    }
+}
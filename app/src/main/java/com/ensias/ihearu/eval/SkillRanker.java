@@ -3,12 +3,13 @@ package com.ensias.ihearu.eval;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.ensias.ihearu.skills.SkillHandler;
-
+import com.ensias.ihearu.input.InputHypothesis;
 import org.dicio.skill.Skill;
 import org.dicio.skill.util.CleanableUp;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Stack;
 
@@ -25,10 +26,18 @@ public class SkillRanker implements CleanableUp {
     private static final float MEDIUM_THRESHOLD_3 = 0.80f;
     private static final float HIGH_THRESHOLD_3   = 0.70f;
 
+    // when fusing alternatives, the skill score obtained by an alternative is multiplied by
+    // exp((confidence - bestConfidence) / CONFIDENCE_SCALE), see getAcousticWeights()
+    private static final float CONFIDENCE_SCALE = 20.0f;
+    // added to fused scores, so that an alternative which matches a more specific skill can win
+    // over a slightly more confident one, which only matches a generic skill (e.g. search)
+    private static final float HIGH_SPECIFICITY_BONUS   = 0.15f;
+    private static final float MEDIUM_SPECIFICITY_BONUS = 0.075f;
+
 
-    private static class SkillScoreResult implements CleanableUp {
-        @Nullable final Skill skill;
-        final float score;
+    public static class SkillScoreResult implements CleanableUp {
+        @Nullable public final Skill skill;
+        public final float score;
 
         SkillScoreResult(@Nullable final Skill skill, final float score) {
             this.skill = skill;
@@ -43,44 +52,117 @@ public class SkillRanker implements CleanableUp {
         }
     }
 
+    public static class FusedResult {
+        public final String input;
+        public final List<String> inputWords;
+        public final List<String> normalizedWordKeys;
+        public final SkillScoreResult result;
+        public final float fusedScore;
+
+        FusedResult(final EncodedInput encodedInput,
+                    final SkillScoreResult result,
+                    final float fusedScore) {
+            this.input = encodedInput.input;
+            this.inputWords = encodedInput.inputWords;
+            this.normalizedWordKeys = encodedInput.normalizedWordKeys;
+            this.result = result;
+            this.fusedScore = fusedScore;
+        }
+    }
+
+    // a result along with the index of the batch it was found in, -1 for the default batch
+    private static class BatchResult {
+        final SkillScoreResult result;
+        final int batchIndex;
+
+        BatchResult(final SkillScoreResult result, final int batchIndex) {
+            this.result = result;
+            this.batchIndex = batchIndex;
+        }
+    }
+
     private static class SkillBatch {
-        // all of the skills by specificity category (high, medium and low)
-        private final List<Skill> highSkills;
-        private final List<Skill> mediumSkills;
-        private final List<Skill> lowSkills;
-
-        SkillBatch(final List<Skill> skills) {
-            highSkills = new ArrayList<>();
-            mediumSkills = new ArrayList<>();
-            lowSkills = new ArrayList<>();
-
-            for (final Skill skill : skills) {
-                switch (skill.specificity()) {
+        private final List<Skill> skills;
+        // the positions in the list above of the skills of each specificity category
+        private final int[] highPositions;
+        private final int[] mediumPositions;
+        private final int[] lowPositions;
+        // used to score only the skills that could possibly match, looking up the input words
+        // only once for all of the specificity categories
+        private final SkillKeywordIndex index;
+        // the closed vocabulary of all of the skills, or null if it is not closed
+        @Nullable private final String[] grammar;
+        // The skill of the most specific category present in the batch, if it is the only one in
+        // that category, in which case ranking chooses it as soon as it scores above the threshold
+        // of the first round it takes part in, see isSurelyBest(). Null otherwise, since then
+        // the order in which the skills of that category are scored matters.
+        @Nullable private final Skill surelyBestCandidate;
+        private final float surelyBestThreshold;
+
+        SkillBatch(final List<Skill> skills,
+                   @Nullable final SkillKeywordIndex.KeywordsProvider keywordsProvider,
+                   @Nullable final SkillGrammar.Provider grammarProvider,
+                   final WordDictionary wordDictionary) {
+            this.skills = new ArrayList<>(skills);
+            final List<Integer> high = new ArrayList<>();
+            final List<Integer> medium = new ArrayList<>();
+            final List<Integer> low = new ArrayList<>();
+
+            for (int i = 0; i < skills.size(); ++i) {
+                switch (skills.get(i).specificity()) {
                     case high:
-                        highSkills.add(skill);
+                        high.add(i);
                         break;
                     case medium:
-                        mediumSkills.add(skill);
+                        medium.add(i);
                         break;
                     case low:
-                        lowSkills.add(skill);
+                        low.add(i);
                         break;
                 }
             }
+
+            highPositions = toArray(high);
+            mediumPositions = toArray(medium);
+            lowPositions = toArray(low);
+            if (highPositions.length > 0) {
+                surelyBestCandidate = getOnly(skills, highPositions);
+                surelyBestThreshold = HIGH_THRESHOLD_1;
+            } else if (mediumPositions.length > 0) {
+                surelyBestCandidate = getOnly(skills, mediumPositions);
+                surelyBestThreshold = MEDIUM_THRESHOLD_2;
+            } else {
+                surelyBestCandidate = getOnly(skills, lowPositions);
+                surelyBestThreshold = LOW_THRESHOLD_3;
+            }
+            index = new SkillKeywordIndex(skills, keywordsProvider, wordDictionary);
+            grammar = SkillGrammar.ofBatch(skills, grammarProvider);
+        }
+
+        @Nullable
+        private static Skill getOnly(final List<Skill> skills, final int[] positions) {
+            return positions.length == 1 ? skills.get(positions[0]) : null;
+        }
+
+        private static int[] toArray(final List<Integer> list) {
+            final int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; ++i) {
+                array[i] = list.get(i);
+            }
+            return array;
         }
 
-        private static SkillScoreResult getFirstAboveThresholdOrBest(
-                final List<Skill> skills,
-                final String input,
-                final List<String> inputWords,
-                final List<String> normalizedWordKeys,
+        private SkillScoreResult getFirstAboveThresholdOrBest(
+                final int[] candidates,
+                final EncodedInput input,
                 final float threshold) {
-            // this ensures that if `skills` is empty and null skill is returned
+            // this ensures that if `candidates` is empty and null skill is returned
             float bestScoreSoFar = Float.MIN_VALUE;
             Skill bestSkillSoFar = null;
 
-            for (final Skill skill : skills) {
-                skill.setInput(input, inputWords, normalizedWordKeys);
+            for (final int candidate : candidates) {
+                final Skill skill = skills.get(candidate);
+                skill.setInput(input.input, input.inputWords, input.normalizedWordKeys);
                 final float score = skill.score();
 
                 if (score > bestScoreSoFar) {
@@ -102,42 +184,45 @@ public class SkillRanker implements CleanableUp {
         }
 
         @Nullable
-        Skill getBest(final String input,
-                      final List<String> inputWords,
-                      final List<String> normalizedWordKeys) {
+        SkillScoreResult getBest(final EncodedInput input) {
+            final BitSet possibleMatches = index.getPossibleMatches(input);
+
             // first round: considering only high-priority skills
             final SkillScoreResult bestHigh = getFirstAboveThresholdOrBest(
-                    highSkills, input, inputWords, normalizedWordKeys, HIGH_THRESHOLD_1);
+                    SkillKeywordIndex.getCandidates(highPositions, possibleMatches),
+                    input, HIGH_THRESHOLD_1);
             if (bestHigh.score > HIGH_THRESHOLD_1) {
-                return bestHigh.skill;
+                return bestHigh;
             }
 
             // second round: considering both medium- and high-priority skills
             final SkillScoreResult bestMedium = getFirstAboveThresholdOrBest(
-                    mediumSkills, input, inputWords, normalizedWordKeys, MEDIUM_THRESHOLD_2);
+                    SkillKeywordIndex.getCandidates(mediumPositions, possibleMatches),
+                    input, MEDIUM_THRESHOLD_2);
             if (bestMedium.score > MEDIUM_THRESHOLD_2) {
                 bestHigh.cleanup();
-                return bestMedium.skill;
+                return bestMedium;
             } else if (bestHigh.score > HIGH_THRESHOLD_2) {
                 bestMedium.cleanup();
-                return bestHigh.skill;
+                return bestHigh;
             }
 
             // third round: all skills are considered
             final SkillScoreResult bestLow = getFirstAboveThresholdOrBest(
-                    lowSkills, input, inputWords, normalizedWordKeys, LOW_THRESHOLD_3);
+                    SkillKeywordIndex.getCandidates(lowPositions, possibleMatches),
+                    input, LOW_THRESHOLD_3);
             if (bestLow.score > LOW_THRESHOLD_3) {
                 bestHigh.cleanup();
                 bestMedium.cleanup();
-                return bestLow.skill;
+                return bestLow;
             } else if (bestMedium.score > MEDIUM_THRESHOLD_3) {
                 bestHigh.cleanup();
                 bestLow.cleanup();
-                return bestMedium.skill;
+                return bestMedium;
             } else if (bestHigh.score > HIGH_THRESHOLD_3) {
                 bestMedium.cleanup();
                 bestLow.cleanup();
-                return bestHigh.skill;
+                return bestHigh;
             }
             // nothing was matched
             bestHigh.cleanup();
@@ -149,22 +234,47 @@ public class SkillRanker implements CleanableUp {
 
     private SkillBatch defaultBatch;
     private Skill fallbackSkill;
+    @Nullable private final SkillKeywordIndex.KeywordsProvider keywordsProvider;
+    @Nullable private final SkillGrammar.Provider grammarProvider;
+    private final WordDictionary wordDictionary;
     @NonNull
     private final Stack<SkillBatch> batches;
 
+    // if keywordsProvider is null all skills are always scored, see SkillKeywordIndex
     public SkillRanker(final List<Skill> defaultSkillBatch,
-                       @NonNull final Skill fallbackSkill) {
-        this.defaultBatch = new SkillBatch(defaultSkillBatch);
+                       @NonNull final Skill fallbackSkill,
+                       @Nullable final SkillKeywordIndex.KeywordsProvider keywordsProvider) {
+        this(defaultSkillBatch, fallbackSkill, keywordsProvider, null);
+    }
+
+    // if grammarProvider is null no batch is ever considered to have a closed vocabulary
+    public SkillRanker(final List<Skill> defaultSkillBatch,
+                       @NonNull final Skill fallbackSkill,
+                       @Nullable final SkillKeywordIndex.KeywordsProvider keywordsProvider,
+                       @Nullable final SkillGrammar.Provider grammarProvider) {
+        this(defaultSkillBatch, fallbackSkill, keywordsProvider, grammarProvider, null);
+    }
+
+    // wordDictionary should contain the keywords, otherwise the keyword index has to look them
+    // up by string, see SkillKeywordIndex; if null, an empty dictionary is used
+    public SkillRanker(final List<Skill> defaultSkillBatch,
+                       @NonNull final Skill fallbackSkill,
+                       @Nullable final SkillKeywordIndex.KeywordsProvider keywordsProvider,
+                       @Nullable final SkillGrammar.Provider grammarProvider,
+                       @Nullable final WordDictionary wordDictionary) {
+        this.keywordsProvider = keywordsProvider;
+        this.grammarProvider = grammarProvider;
+        this.wordDictionary = wordDictionary == null ? WordDictionary.EMPTY : wordDictionary;
+        this.defaultBatch = new SkillBatch(defaultSkillBatch, keywordsProvider, grammarProvider,
+                this.wordDictionary);
         this.fallbackSkill = fallbackSkill;
         this.batches = new Stack<>();
     }
 
+    // the skills in the batch should already have their context set
     public void addBatchToTop(final List<Skill> skillBatch) {
-        for (final Skill skill : skillBatch) {
-            // set the context to the enqueued skills
-            skill.setContext(SkillHandler.getSkillContext());
-        }
-        batches.push(new SkillBatch(skillBatch));
+        batches.push(new SkillBatch(skillBatch, keywordsProvider, grammarProvider,
+                wordDictionary));
     }
 
     public void removeTopBatch() {
@@ -175,23 +285,203 @@ public class SkillRanker implements CleanableUp {
         batches.removeAllElements();
     }
 
+    // true if no follow-up batches were added on top of the default one, i.e. the skills used
+    // for ranking are only the ones built from skill infos, which can thus be rebuilt at will
+    public boolean hasOnlyDefaultBatch() {
+        return batches.isEmpty();
+    }
+
+    // The closed vocabulary of the follow-up batch on top, if any, e.g. when the last skill asked
+    // a yes/no question. Null when the default batch is being used, since then anything can be
+    // said, and when the skills on top accept arbitrary words.
+    @Nullable
+    public String[] getTopBatchGrammar() {
+        return batches.isEmpty() ? null : batches.peek().grammar;
+    }
+
+    // splits the input into words and converts them to ids once, so that the result can be
+    // reused for all of the batches and skill lists (and by callers, e.g. for every alternative)
+    public EncodedInput encode(final String input) {
+        return wordDictionary.encode(input);
+    }
+
+    @Nullable
     public Skill getBest(final String input,
                          final List<String> inputWords,
                          final List<String> normalizedWordKeys) {
-        for (int i = batches.size() - 1; i >= 0; --i) {
-            final Skill skillFromBatch
-                    = batches.get(i).getBest(input, inputWords, normalizedWordKeys);
-            if (skillFromBatch != null) {
-                // found a matching skill: remove all skills in batch above it
-                for (int j = i + 1; j < batches.size(); ++j) {
-                    removeTopBatch();
+        return getBest(wordDictionary.encode(input, inputWords, normalizedWordKeys));
+    }
+
+    // the input has to be obtained from encode()
+    @Nullable
+    public Skill getBest(final EncodedInput input) {
+        @Nullable final SkillScoreResult result = getBestWithScore(input);
+        return result == null ? null : result.skill;
+    }
+
+    // same as getBest(), but also returns the score the chosen skill obtained
+    @Nullable
+    public SkillScoreResult getBestWithScore(final String input,
+                                             final List<String> inputWords,
+                                             final List<String> normalizedWordKeys) {
+        return getBestWithScore(wordDictionary.encode(input, inputWords, normalizedWordKeys));
+    }
+
+    @Nullable
+    public SkillScoreResult getBestWithScore(final EncodedInput input) {
+        @Nullable final BatchResult batchResult = findBest(input);
+        if (batchResult == null) {
+            return null;
+        }
+        // found a matching skill: remove all skills in batch above it
+        removeBatchesAbove(batchResult.batchIndex);
+        return batchResult.result;
+    }
+
+    // Ranks all of the alternatives of an input together, instead of just taking the first one
+    // that matches a skill: the skill score of each alternative is weighed by how confident the
+    // recognizer is in it, and a bonus is added for specific skills, so that e.g. the second
+    // alternative wins if it is almost as likely as the first one and matches a specific skill,
+    // while the first one only matches a generic skill. Returns null if no alternative matched.
+    @Nullable
+    public FusedResult getBestFused(final List<InputHypothesis> hypotheses) {
+        final float[] acousticWeights = getAcousticWeights(hypotheses);
+        FusedResult best = null;
+        int bestBatchIndex = -1;
+        int bestHypothesisIndex = -1;
+
+        for (int i = 0; i < hypotheses.size(); ++i) {
+            final EncodedInput input = wordDictionary.encode(hypotheses.get(i).text);
+            @Nullable final BatchResult batchResult = findBest(input);
+            if (batchResult == null || batchResult.result.skill == null) {
+                continue;
+            }
+
+            final float fusedScore = fuseScore(batchResult.result, acousticWeights[i]);
+            if (best == null || fusedScore > best.fusedScore) {
+                // the first alternative wins ties, since it is the most likely one
+                if (best != null && best.result.skill != batchResult.result.skill) {
+                    best.result.cleanup();
                 }
-                return skillFromBatch;
+                best = new FusedResult(input, batchResult.result, fusedScore);
+                bestBatchIndex = batchResult.batchIndex;
+                bestHypothesisIndex = i;
+            } else if (best.result.skill != batchResult.result.skill) {
+                batchResult.result.cleanup();
             }
         }
 
-        return defaultBatch.getBest(input, inputWords, normalizedWordKeys);
+        if (best == null) {
+            return null;
+        }
+        if (bestHypothesisIndex != hypotheses.size() - 1) {
+            // the input of the chosen skill might have been overwritten by later alternatives
+            // scored with the same skill instance, so set it again
+            best.result.skill.setInput(best.input, best.inputWords, best.normalizedWordKeys);
+            best.result.skill.score();
+        }
+        removeBatchesAbove(bestBatchIndex);
+        return best;
     }
+
+    // Returns how much the score obtained by each alternative should count, between 0 and 1, with
+    // the most confident alternative having weight 1. Vosk confidences are log-likelihoods, so
+    // the difference with the best one is converted back to a likelihood ratio, softened by
+    // CONFIDENCE_SCALE. If the confidences are not known, all alternatives count the same.
+    public static float[] getAcousticWeights(final List<InputHypothesis> hypotheses) {
+        final float[] weights = new float[hypotheses.size()];
+        float bestConfidence = Float.NEGATIVE_INFINITY;
+        for (final InputHypothesis hypothesis : hypotheses) {
+            if (!hypothesis.hasConfidence()) {
+                Arrays.fill(weights, 1.0f);
+                return weights;
+            }
+            bestConfidence = Math.max(bestConfidence, hypothesis.confidence);
+        }
+
+        for (int i = 0; i < weights.length; ++i) {
+            weights[i] = (float) Math.exp(
+                    (hypotheses.get(i).confidence - bestConfidence) / CONFIDENCE_SCALE);
+        }
+        return weights;
+    }
+
+    // true if isSurelyBest() can return true for some skill, i.e. if it is worth checking
+    public boolean hasSurelyBestCandidate() {
+        return batches.isEmpty() && defaultBatch.surelyBestCandidate != null;
+    }
+
+    // True if a skill of this ranker which obtained this score on the first hypothesis would be
+    // chosen by getBestFused() whatever the other skills score on any hypothesis, so that ranking
+    // can be skipped. Only the default batch has to be in use, and the skill has to be the only
+    // one of the most specific category in it (e.g. open, the only medium specificity skill,
+    // since there are no high specificity ones), scoring above the threshold of the first round
+    // it takes part in. No other hypothesis must be confident enough to beat it, even with a
+    // perfect score and the same bonus, which is the highest one in the batch.
+    public boolean isSurelyBest(final Skill skill,
+                                final float score,
+                                final List<InputHypothesis> hypotheses) {
+        if (!hasSurelyBestCandidate() || skill != defaultBatch.surelyBestCandidate
+                || score <= defaultBatch.surelyBestThreshold) {
+            return false;
+        }
+
+        final float[] acousticWeights = getAcousticWeights(hypotheses);
+        final float bonus = getSpecificityBonus(skill);
+        final float fusedScore = score * acousticWeights[0] + bonus;
+        for (int i = 1; i < acousticWeights.length; ++i) {
+            if (acousticWeights[i] + bonus > fusedScore) {
+                return false; // the first hypothesis wins ties
+            }
+        }
+        return true;
+    }
+
+    public static float fuseScore(final SkillScoreResult result, final float acousticWeight) {
+        final float bonus = result.skill == null ? 0.0f : getSpecificityBonus(result.skill);
+        return result.score * acousticWeight + bonus;
+    }
+
+    private static float getSpecificityBonus(final Skill skill) {
+        switch (skill.specificity()) {
+            case high:
+                return HIGH_SPECIFICITY_BONUS;
+            case medium:
+                return MEDIUM_SPECIFICITY_BONUS;
+            default:
+                return 0.0f;
+        }
+    }
+
+    // does not remove any batch, the index of the batch the result comes from is returned instead
+    @Nullable
+    private BatchResult findBest(final EncodedInput input) {
+        for (int i = batches.size() - 1; i >= 0; --i) {
+            final SkillScoreResult resultFromBatch = batches.get(i).getBest(input);
+            if (resultFromBatch != null) {
+                return new BatchResult(resultFromBatch, i);
+            }
+        }
+
+        @Nullable final SkillScoreResult resultFromDefault = defaultBatch.getBest(input);
+        return resultFromDefault == null ? null : new BatchResult(resultFromDefault, -1);
+    }
+
+    // batchIndex -1 means the default batch, i.e. all batches are removed
+    private void removeBatchesAbove(final int batchIndex) {
+        while (batches.size() > batchIndex + 1) {
+            removeTopBatch();
+        }
+    }
+
+    // the skills the ranker was built with, i.e. the default batch and the fallback skill, e.g.
+    // to reuse them once the ranker is not needed anymore
+    public List<Skill> getOwnSkills() {
+        final List<Skill> ownSkills = new ArrayList<>(defaultBatch.skills);
+        ownSkills.add(fallbackSkill);
+        return ownSkills;
+    }
+
     public Skill getFallbackSkill(final String input,
                                   final List<String> inputWords,
                                   final List<String> normalizedWordKeys) {
@@ -0,0 +1,197 @@
+package com.ensias.ihearu.eval;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.input.InputHypothesis;
+import com.ensias.ihearu.skills.PrewarmableSkillInfo;
+import com.ensias.ihearu.skills.SkillHandler;
+import org.dicio.skill.Skill;
+import org.dicio.skill.SkillInfo;
+import org.dicio.skill.util.CleanableUp;
+import org.dicio.skill.util.WordExtractor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Ranks skills on the partial input received while the user is still talking, so that the skill
+// which is probably going to be chosen can prepare in advance (see PrewarmableSkillInfo), hiding
+// network and indexing latency behind the time the user spends talking. If the speculated skill
+// matches the final input so well that ranking would surely choose it anyway (see
+// SkillRanker.isSurelyBest()), it is used right away, without ranking all of the skills again.
+// Only the single skill of the most specific category can be sure, so claiming is useless (and
+// is skipped, see SkillRanker.hasSurelyBestCandidate()) if that category has more skills.
+// Ranking happens on a single background thread with its own ranker and skill instances (taken
+// from and given back to SkillPool), so it never interferes with the evaluation of other inputs.
+public class SpeculativeSkillMatcher implements CleanableUp {
+
+    public static final String TAG = SpeculativeSkillMatcher.class.getSimpleName();
+
+    // the first words of a partial input are stable if they did not change in the last partial
+    // input, and speculation happens only if at least this many words are stable
+    private static final int MIN_STABLE_WORDS = 2;
+    // the claim gives up instead of waiting for longer than this for a speculation or a prewarm
+    // (which can take long, e.g. indexing apps) to finish, since the evaluation is waiting
+    private static final long CLAIM_TIMEOUT_MILLIS = 50;
+
+    private final Supplier<SkillRanker> isolatedRankerSupplier;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // only used on the main thread
+    @Nullable private List<String> previousPartialWords = null;
+    @Nullable private String lastSpeculatedInput = null;
+
+    private volatile boolean cleanedUp = false;
+
+    // only used on the executor thread
+    @Nullable private SkillRanker ranker = null;
+    @Nullable private Skill speculatedSkill = null;
+    private final Set<String> prewarmedSkillIds = new HashSet<>();
+
+
+    // isolatedRankerSupplier has to build a new ranker with skill instances from SkillPool at
+    // every call, since skills used for the final input are then handed over to the evaluator
+    public SpeculativeSkillMatcher(final Supplier<SkillRanker> isolatedRankerSupplier) {
+        this.isolatedRankerSupplier = isolatedRankerSupplier;
+    }
+
+    // to be called on the main thread when the user starts providing some new input
+    public void reset() {
+        previousPartialWords = null;
+        lastSpeculatedInput = null;
+        executor.execute(() -> {
+            cleanupSpeculatedSkill();
+            prewarmedSkillIds.clear();
+        });
+    }
+
+    // to be called on the main thread with every partial input
+    public void onPartialInput(final String partialInput) {
+        final List<String> words = WordExtractor.extractWords(partialInput);
+        int stableWords = 0;
+        if (previousPartialWords != null) {
+            while (stableWords < words.size() && stableWords < previousPartialWords.size()
+                    && words.get(stableWords).equals(previousPartialWords.get(stableWords))) {
+                ++stableWords;
+            }
+        }
+        previousPartialWords = words;
+
+        if (stableWords < MIN_STABLE_WORDS) {
+            return;
+        }
+        final String stableInput = String.join(" ", words.subList(0, stableWords));
+        if (!stableInput.equals(lastSpeculatedInput)) {
+            lastSpeculatedInput = stableInput;
+            executor.execute(() -> speculate(stableInput));
+        }
+    }
+
+    // Returns the speculated skill, with the first input already set, if ranking would surely
+    // choose it for the inputs, otherwise null. Waits for the speculation in progress, if any,
+    // only for a short time. The returned skill is not used for speculation anymore, so it can be
+    // evaluated normally, and has to be given back with SkillHandler.releaseSkills() afterwards.
+    @Nullable
+    public Skill claim(final List<InputHypothesis> inputs)
+            throws InterruptedException, ExecutionException {
+        final Future<Skill> claimedSkill = executor.submit(() -> claimOnExecutor(inputs));
+        try {
+            return claimedSkill.get(CLAIM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            if (claimedSkill.cancel(false)) {
+                return null; // the executor is still busy, so rank as usual
+            }
+            return claimedSkill.get(); // the claim itself has already started, and is quick
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        cleanedUp = true;
+        // let the task running, if any, finish, and then give the skills back to the pool
+        executor.execute(() -> {
+            cleanupSpeculatedSkill();
+            releaseRanker(null);
+        });
+        executor.shutdown();
+    }
+
+
+    private void speculate(final String input) {
+        if (cleanedUp) {
+            return;
+        }
+        if (ranker == null) {
+            ranker = isolatedRankerSupplier.get();
+        }
+        cleanupSpeculatedSkill();
+
+        // the isolated ranker only has the default batch, so no batch is ever removed
+        @Nullable final SkillRanker.SkillScoreResult result
+                = ranker.getBestWithScore(ranker.encode(input));
+        if (result == null || result.skill == null) {
+            return;
+        }
+        speculatedSkill = result.skill;
+
+        @Nullable final SkillInfo skillInfo = speculatedSkill.getSkillInfo();
+        if (skillInfo instanceof PrewarmableSkillInfo && prewarmedSkillIds.add(skillInfo.getId())) {
+            try {
+                ((PrewarmableSkillInfo) skillInfo).prewarm(SkillHandler.getSkillContext());
+            } catch (final RuntimeException e) {
+                // prewarming is only an optimization, the skill will do the work again if needed
+                Log.w(TAG, "Could not prewarm skill " + skillInfo.getId(), e);
+            }
+        }
+    }
+
+    @Nullable
+    private Skill claimOnExecutor(final List<InputHypothesis> inputs) {
+        if (speculatedSkill == null || ranker == null || cleanedUp) {
+            return null;
+        }
+        final Skill skill = speculatedSkill;
+        speculatedSkill = null;
+
+        final String input = inputs.get(0).text;
+        final List<String> inputWords = WordExtractor.extractWords(input);
+        skill.setInput(input, inputWords, WordExtractor.normalizeWords(inputWords));
+        if (!ranker.isSurelyBest(skill, skill.score(), inputs)) {
+            skill.cleanup();
+            return null;
+        }
+
+        // the skill now belongs to the evaluator, so the next speculations need another ranker,
+        // which will take the other skills back from the pool
+        releaseRanker(skill);
+        return skill;
+    }
+
+    // gives the skills of the ranker back to the pool, except for the one handed over, if any
+    private void releaseRanker(@Nullable final Skill handedOverSkill) {
+        if (ranker == null) {
+            return;
+        }
+        final List<Skill> skills = ranker.getOwnSkills();
+        skills.remove(handedOverSkill);
+        SkillHandler.releaseSkills(skills);
+        ranker.cleanup();
+        ranker = null;
+    }
+
+    private void cleanupSpeculatedSkill() {
+        if (speculatedSkill != null) {
+            speculatedSkill.cleanup();
+            speculatedSkill = null;
+        }
+    }
+}
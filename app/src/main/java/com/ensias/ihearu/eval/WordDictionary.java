@@ -0,0 +1,63 @@
+package com.ensias.ihearu.eval;
+
+import org.dicio.skill.util.WordExtractor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Maps the normalized words of the sections of a locale (see SectionTables.words) to consecutive
+// int ids, so that inputs can be encoded once (see EncodedInput) and then matched by comparing
+// ints, e.g. in SkillKeywordIndex. Immutable, and thus safe to share between threads.
+public final class WordDictionary {
+
+    public static final int UNKNOWN_WORD = -1;
+    public static final WordDictionary EMPTY = new WordDictionary(new String[0]);
+
+    private final Map<String, Integer> ids;
+
+
+    // words are normalized like WordExtractor.normalizeWords() does, duplicates get the same id
+    public WordDictionary(final String[] words) {
+        ids = new HashMap<>(words.length * 2);
+        for (final String word : words) {
+            final String key = normalize(word);
+            if (!ids.containsKey(key)) {
+                ids.put(key, ids.size());
+            }
+        }
+    }
+
+    // the number of distinct ids, which are all in [0, size())
+    public int size() {
+        return ids.size();
+    }
+
+    public int getId(final String normalizedWordKey) {
+        // toLowerCase() returns the same string if it is already lowercase
+        final Integer id = ids.get(normalizedWordKey.toLowerCase(Locale.ROOT));
+        return id == null ? UNKNOWN_WORD : id;
+    }
+
+    public EncodedInput encode(final String input) {
+        final List<String> inputWords = WordExtractor.extractWords(input);
+        return encode(input, inputWords, WordExtractor.normalizeWords(inputWords));
+    }
+
+    public EncodedInput encode(final String input,
+                               final List<String> inputWords,
+                               final List<String> normalizedWordKeys) {
+        final int[] wordIds = new int[normalizedWordKeys.size()];
+        for (int i = 0; i < wordIds.length; ++i) {
+            wordIds[i] = getId(normalizedWordKeys.get(i));
+        }
+
+        return new EncodedInput(input, inputWords, normalizedWordKeys, wordIds);
+    }
+
+
+    static String normalize(final String word) {
+        return WordExtractor.nfkdNormalizeWord(word.toLowerCase(Locale.ROOT));
+    }
+}
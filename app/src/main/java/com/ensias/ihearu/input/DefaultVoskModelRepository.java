@@ -0,0 +1,27 @@
+package com.ensias.ihearu.input;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The official models from alphacephei.com, used when no other repository is set in settings
+public class DefaultVoskModelRepository implements VoskModelRepository {
+
+    //getting vosk zip for every language
+    public static final Map<String, String> MODEL_URLS = new HashMap<String, String>() {{
+        put("en",    "https://alphacephei.com/vosk/models/vosk-model-small-en-us-0.15.zip");
+        put("en-in", "https://alphacephei.com/vosk/models/vosk-model-small-en-in-0.4.zip");
+        put("fr",    "https://alphacephei.com/vosk/models/vosk-model-small-fr-0.22.zip");
+
+    }};
+
+    @Override
+    public Map<String, ModelInfo> getModels() {
+        final Map<String, ModelInfo> models = new HashMap<>();
+        for (final Map.Entry<String, String> modelUrl : MODEL_URLS.entrySet()) {
+            // sizes and hashes are not published, the zip CRCs are checked when extracting
+            models.put(modelUrl.getKey(),
+                    new ModelInfo(modelUrl.getKey(), modelUrl.getValue(), -1, null));
+        }
+        return models;
+    }
+}
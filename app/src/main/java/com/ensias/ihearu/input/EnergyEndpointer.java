@@ -0,0 +1,134 @@
+package com.ensias.ihearu.input;
+
+// Energy based voice activity detector, used to find where speech begins and ends in the audio
+// coming from the microphone. Audio is split into 20ms frames, and a frame contains speech if
+// its energy is well above the background noise level, which is continuously estimated from the
+// frames without speech. Hysteresis is used so that short pauses between words (or quieter
+// syllables) do not end the speech.
+public final class EnergyEndpointer {
+
+    public enum State {
+        WAITING_FOR_SPEECH,
+        SPEECH,
+        // enough silence after the speech
+        END_OF_SPEECH,
+        // no speech at all after noSpeechTimeoutMillis
+        NO_SPEECH_TIMEOUT
+    }
+
+    private static final int FRAME_MILLIS = 20;
+    // how many decibels above the noise floor a frame has to be to start or continue speech
+    private static final double SPEECH_START_THRESHOLD_DB = 10.0;
+    private static final double SPEECH_CONTINUE_THRESHOLD_DB = 6.0;
+    // speech starts only after this many consecutive loud frames, to ignore clicks and bumps
+    private static final int SPEECH_START_FRAMES = 3;
+    // the noise floor follows decreases immediately, but increases only slowly
+    private static final double NOISE_FLOOR_RISE_RATE = 0.02;
+    // the noise floor is never assumed to be below this, not to trigger on the faintest noise
+    private static final double MIN_NOISE_FLOOR_DB = 30.0;
+
+    private final int samplesPerFrame;
+    private final int endSilenceFrames;
+    private final int noSpeechTimeoutFrames;
+    private final int maxSpeechFrames;
+
+    private State state;
+    private double noiseFloorDb;
+    private int framesSinceStart;
+    private int consecutiveLoudFrames;
+    private int consecutiveSilentFrames;
+    private int speechFrames;
+    // samples of the current frame received so far, which might span multiple accept() calls
+    private int frameSamples;
+    private double frameSquareSum;
+
+
+    public EnergyEndpointer(final int sampleRate,
+                            final int endSilenceMillis,
+                            final int noSpeechTimeoutMillis,
+                            final int maxSpeechMillis) {
+        samplesPerFrame = sampleRate * FRAME_MILLIS / 1000;
+        endSilenceFrames = Math.max(1, endSilenceMillis / FRAME_MILLIS);
+        noSpeechTimeoutFrames = Math.max(1, noSpeechTimeoutMillis / FRAME_MILLIS);
+        maxSpeechFrames = Math.max(1, maxSpeechMillis / FRAME_MILLIS);
+        reset();
+    }
+
+    public void reset() {
+        state = State.WAITING_FOR_SPEECH;
+        noiseFloorDb = Double.MAX_VALUE; // will be set by the first frame
+        framesSinceStart = 0;
+        consecutiveLoudFrames = 0;
+        consecutiveSilentFrames = 0;
+        speechFrames = 0;
+        frameSamples = 0;
+        frameSquareSum = 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Processes 16-bit mono samples and returns the state after the last complete frame. Once
+    // END_OF_SPEECH or NO_SPEECH_TIMEOUT is reached the state does not change until reset().
+    public State accept(final short[] samples, final int length) {
+        for (int i = 0; i < length; ++i) {
+            frameSquareSum += (double) samples[i] * samples[i];
+            ++frameSamples;
+            if (frameSamples == samplesPerFrame) {
+                onFrame(10.0 * Math.log10(frameSquareSum / frameSamples + 1.0));
+                frameSamples = 0;
+                frameSquareSum = 0;
+            }
+        }
+        return state;
+    }
+
+    private void onFrame(final double energyDb) {
+        if (state == State.END_OF_SPEECH || state == State.NO_SPEECH_TIMEOUT) {
+            return;
+        }
+        ++framesSinceStart;
+
+        if (state == State.WAITING_FOR_SPEECH) {
+            if (energyDb > noiseFloorDb + SPEECH_START_THRESHOLD_DB) {
+                ++consecutiveLoudFrames;
+                if (consecutiveLoudFrames >= SPEECH_START_FRAMES) {
+                    state = State.SPEECH;
+                    speechFrames = consecutiveLoudFrames;
+                    consecutiveSilentFrames = 0;
+                    return;
+                }
+            } else {
+                consecutiveLoudFrames = 0;
+                updateNoiseFloor(energyDb);
+            }
+
+            if (framesSinceStart >= noSpeechTimeoutFrames) {
+                state = State.NO_SPEECH_TIMEOUT;
+            }
+
+        } else { // State.SPEECH
+            ++speechFrames;
+            if (energyDb > noiseFloorDb + SPEECH_CONTINUE_THRESHOLD_DB) {
+                consecutiveSilentFrames = 0;
+            } else {
+                ++consecutiveSilentFrames;
+                updateNoiseFloor(energyDb);
+            }
+
+            if (consecutiveSilentFrames >= endSilenceFrames || speechFrames >= maxSpeechFrames) {
+                state = State.END_OF_SPEECH;
+            }
+        }
+    }
+
+    private void updateNoiseFloor(final double energyDb) {
+        final double clampedEnergyDb = Math.max(energyDb, MIN_NOISE_FLOOR_DB);
+        if (clampedEnergyDb < noiseFloorDb) {
+            noiseFloorDb = clampedEnergyDb;
+        } else {
+            noiseFloorDb += (clampedEnergyDb - noiseFloorDb) * NOISE_FLOOR_RISE_RATE;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.ensias.ihearu.input;
+
+import java.io.IOException;
+
+// Provides 16-bit mono audio samples, e.g. from the microphone or from a recorded file
+public interface FrameSource {
+
+    int getSampleRate();
+
+    void start() throws IOException;
+
+    // blocks until some samples are available, and returns how many were read into buffer, or -1
+    // if there will never be any more samples
+    int read(short[] buffer, int length) throws IOException;
+
+    void stop();
+
+    void release();
+}
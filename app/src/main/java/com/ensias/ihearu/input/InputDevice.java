@@ -27,6 +27,13 @@ public abstract class InputDevice implements CleanableUp {
         //Called when some input was received from the user.
         void onInputReceived(List<String> input);
 
+        // Called instead of onInputReceived() by input devices which know how confident they are
+        // in each of the alternatives (e.g. the N-best list from Vosk). Listeners which can make
+        // use of the confidences should override this.
+        default void onScoredInputReceived(final List<InputHypothesis> input) {
+            onInputReceived(InputHypothesis.texts(input));
+        }
+
 
         // Called when no input was received from the user after he seemed to want to provide some
 
@@ -58,6 +65,20 @@ public abstract class InputDevice implements CleanableUp {
 
     public abstract void cancelGettingInput();
 
+    // Called when the app goes to the background and when it comes back. While paused, devices
+    // must not keep resources such as the microphone busy, e.g. to listen for a wake word.
+    public void onPause() {
+    }
+
+    public void onResume() {
+    }
+
+    // The only words the user is expected to say the next time input is requested, or null if
+    // anything could be said. Input devices can use it to improve recognition, but are not
+    // required to, and should still accept other input.
+    public void setVocabularyHint(@Nullable final String[] words) {
+    }
+
 
     public final void setInputDeviceListener(@Nullable final InputDeviceListener listener) {
         this.inputDeviceListener = listener;
@@ -100,6 +121,17 @@ public abstract class InputDevice implements CleanableUp {
     }
 
 
+    protected void notifyScoredInputReceived(final List<InputHypothesis> input) {
+        if (BuildConfig.DEBUG) {
+            Log.i(TAG, "Scored input from user: " + input.toString());
+        }
+
+        if (inputDeviceListener != null) {
+            inputDeviceListener.onScoredInputReceived(input);
+        }
+    }
+
+
     protected void notifyNoInputReceived() {
         if (BuildConfig.DEBUG) {
             Log.i(TAG, "No input from user");
@@ -0,0 +1,44 @@
+package com.ensias.ihearu.input;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// One of the alternative transcriptions of what the user said, with the confidence the recognizer
+// has in it. Confidences are recognizer-specific (e.g. Vosk provides log-likelihoods), so they can
+// only be compared among the alternatives of the same input.
+public final class InputHypothesis {
+
+    public final String text;
+    // NaN if the input device does not provide confidences (e.g. typed input)
+    public final float confidence;
+
+    public InputHypothesis(final String text, final float confidence) {
+        this.text = text;
+        this.confidence = confidence;
+    }
+
+    public boolean hasConfidence() {
+        return !Float.isNaN(confidence);
+    }
+
+    public static List<InputHypothesis> withoutConfidence(final List<String> texts) {
+        final List<InputHypothesis> hypotheses = new ArrayList<>(texts.size());
+        for (final String text : texts) {
+            hypotheses.add(new InputHypothesis(text, Float.NaN));
+        }
+        return hypotheses;
+    }
+
+    public static List<String> texts(final List<InputHypothesis> hypotheses) {
+        final List<String> texts = new ArrayList<>(hypotheses.size());
+        for (final InputHypothesis hypothesis : hypotheses) {
+            texts.add(hypothesis.text);
+        }
+        return texts;
+    }
+
+    @Override
+    public String toString() {
+        return text + " (" + confidence + ")";
+    }
+}
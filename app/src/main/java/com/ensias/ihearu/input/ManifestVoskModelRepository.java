@@ -0,0 +1,109 @@
+package com.ensias.ihearu.input;
+
+import android.os.Build;
+import android.security.NetworkSecurityPolicy;
+
+import com.ensias.ihearu.util.ConnectionUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Models described by a JSON manifest, served by a (local) http mirror or stored on the device,
+// e.g. sideloaded alongside the model zips. The manifest looks like this, where urls can be
+// relative to the manifest itself:
+// {"models": [{"locale": "en", "url": "en.zip", "size": 41205931, "sha256": "a1b2..."}]}
+// size and sha256 are optional, but if present the downloaded zip is checked against them.
+// Plain http is only allowed for the hosts in res/xml/network_security_config.xml.
+public class ManifestVoskModelRepository implements VoskModelRepository {
+
+    private final String manifestUrl;
+
+    // http(s):// or file:// url, or an absolute path on the device
+    public ManifestVoskModelRepository(final String manifestUrl) {
+        this.manifestUrl = manifestUrl.startsWith("/") ? "file://" + manifestUrl : manifestUrl;
+    }
+
+    @Override
+    public Map<String, ModelInfo> getModels() throws IOException {
+        checkCleartextPermitted(manifestUrl);
+        final Map<String, ModelInfo> models;
+        try {
+            models = parseManifest(new URI(manifestUrl), readManifest());
+        } catch (final URISyntaxException | JSONException e) {
+            throw new IOException("Invalid Vosk model manifest " + manifestUrl, e);
+        }
+        for (final ModelInfo model : models.values()) {
+            checkCleartextPermitted(model.url);
+        }
+        return models;
+    }
+
+    // fail early with a clear message, instead of letting the connection (or, worse, the
+    // download manager, which fails silently) be blocked by the network security config
+    private static void checkCleartextPermitted(final String url) throws IOException {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || !url.startsWith("http:")) {
+            return;
+        }
+        final String host;
+        try {
+            host = new URI(url).getHost();
+        } catch (final URISyntaxException e) {
+            return; // reported when parsing the manifest or downloading the model
+        }
+        if (host != null
+                && !NetworkSecurityPolicy.getInstance().isCleartextTrafficPermitted(host)) {
+            throw new IOException("Cleartext http not permitted for Vosk model url " + url
+                    + ", use https or allow the host in the network security config");
+        }
+    }
+
+    private String readManifest() throws IOException {
+        if (!manifestUrl.startsWith("file:")) {
+            return ConnectionUtils.getPage(manifestUrl);
+        }
+
+        final File file;
+        try {
+            file = new File(new URI(manifestUrl));
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid Vosk model manifest path " + manifestUrl, e);
+        }
+        try (InputStream inputStream = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int readBytes;
+            while (offset < bytes.length
+                    && (readBytes = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += readBytes;
+            }
+            return new String(bytes, 0, offset, StandardCharsets.UTF_8);
+        }
+    }
+
+    static Map<String, ModelInfo> parseManifest(final URI manifestUri, final String manifest)
+            throws JSONException {
+        final JSONArray jsonModels = new JSONObject(manifest).getJSONArray("models");
+        final Map<String, ModelInfo> models = new HashMap<>();
+        for (int i = 0; i < jsonModels.length(); ++i) {
+            final JSONObject jsonModel = jsonModels.getJSONObject(i);
+            final String locale = jsonModel.getString("locale");
+            models.put(locale, new ModelInfo(
+                    locale,
+                    manifestUri.resolve(jsonModel.getString("url")).toString(),
+                    jsonModel.optLong("size", -1),
+                    jsonModel.has("sha256") ? jsonModel.getString("sha256") : null));
+        }
+        return models;
+    }
+}
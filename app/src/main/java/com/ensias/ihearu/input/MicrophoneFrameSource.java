@@ -0,0 +1,67 @@
+package com.ensias.ihearu.input;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import java.io.IOException;
+
+public final class MicrophoneFrameSource implements FrameSource {
+
+    private final AudioRecord recorder;
+    private final int sampleRate;
+
+
+    public MicrophoneFrameSource(final int sampleRate, final int minBufferSamples)
+            throws SpeechInputDevice.UnableToAccessMicrophoneException {
+        this.sampleRate = sampleRate;
+        final int minBufferBytes = AudioRecord.getMinBufferSize(sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, sampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                Math.max(minBufferBytes, minBufferSamples * 2));
+        if (recorder.getState() == AudioRecord.STATE_UNINITIALIZED) {
+            recorder.release();
+            throw new SpeechInputDevice.UnableToAccessMicrophoneException();
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        if (recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            return;
+        }
+        recorder.startRecording();
+        if (recorder.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            recorder.stop();
+            throw new IOException(new SpeechInputDevice.UnableToAccessMicrophoneException());
+        }
+    }
+
+    @Override
+    public int read(final short[] buffer, final int length) throws IOException {
+        final int readSamples = recorder.read(buffer, 0, length);
+        if (readSamples < 0) {
+            throw new IOException("Error reading audio: " + readSamples);
+        }
+        return readSamples;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (recorder.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+            recorder.stop();
+        }
+    }
+
+    @Override
+    public void release() {
+        stop();
+        recorder.release();
+    }
+}
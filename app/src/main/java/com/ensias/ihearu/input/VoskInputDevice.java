@@ -18,34 +18,33 @@ import android.widget.Toast;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
-import androidx.core.os.LocaleListCompat;
 import androidx.preference.PreferenceManager;
 
 import com.ensias.ihearu.BuildConfig;
 import com.ensias.ihearu.R;
 import com.ensias.ihearu.Sections;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.vosk.LibVosk;
-import org.vosk.LogLevel;
+import org.json.JSONArray;
 import org.vosk.Model;
 import org.vosk.Recognizer;
 import org.vosk.android.RecognitionListener;
-import org.vosk.android.SpeechService;
 
-import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
@@ -54,22 +53,35 @@ public class VoskInputDevice extends SpeechInputDevice {
     public static final String TAG = VoskInputDevice.class.getSimpleName();
     public static final String MODEL_PATH = "/vosk-model";
     public static final String MODEL_ZIP_FILENAME = "model.zip";
-    public static final float SAMPLE_RATE = 44100.0f;
-
-    //getting vosk zip for every language
-    public static final Map<String, String> MODEL_URLS = new HashMap<String, String>() {{
-        put("en",    "https://alphacephei.com/vosk/models/vosk-model-small-en-us-0.15.zip");
-        put("en-in", "https://alphacephei.com/vosk/models/vosk-model-small-en-in-0.4.zip");
-        put("fr",    "https://alphacephei.com/vosk/models/vosk-model-small-fr-0.22.zip");
-
-    }};
-
+    // used if the model does not specify its sample rate, the small models are all at 16kHz
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    private static final int NO_SPEECH_TIMEOUT_MILLIS = 6000;
+    private static final int MAX_SPEECH_MILLIS = 15000;
 
     private Activity activity;
     private final CompositeDisposable disposables = new CompositeDisposable();
     @Nullable private BroadcastReceiver downloadingBroadcastReceiver = null;
     private Long currentModelDownloadId = null;
-    @Nullable private SpeechService speechService = null;
+    // the model being downloaded, used to verify the downloaded zip; also kept in the preferences
+    // along with the download id, so that the zip is verified even if the app is restarted
+    @Nullable private VoskModelRepository.ModelInfo currentModel = null;
+    @Nullable private VoskSpeechService speechService = null;
+    @Nullable private Model model = null;
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
+    // the words set with setVocabularyHint(), and a recognizer restricted to them, built lazily
+    @Nullable private String[] vocabularyHint = null;
+    @Nullable private String[] grammarRecognizerWords = null;
+    @Nullable private Recognizer grammarRecognizer = null;
+    // shared by the speech service and the wake word detector, which never use it at once
+    @Nullable private FrameSource microphone = null;
+    // null if the wake word is disabled
+    @Nullable private Recognizer wakeWordRecognizer = null;
+    @Nullable private String wakePhrase = null;
+    @Nullable private WakeWordDetector wakeWordDetector = null;
+    // the last detector thread, which may still be releasing the microphone after being stopped
+    @Nullable private Thread wakeWordThread = null;
+    // the wake word is not listened for while the app is in the background
+    private boolean paused = false;
 
     private boolean currentlyInitializingRecognizer = false;
     private boolean startListeningOnLoaded = false;
@@ -105,15 +117,11 @@ public class VoskInputDevice extends SpeechInputDevice {
                                 tryToGetInput(manual);
                             } else {
                                 onInactive();
+                                startWakeWordDetection();
                             }
                         }, throwable -> {
                             currentlyInitializingRecognizer = false;
-                            if ("Failed to initialize recorder. Microphone might be already in use."
-                                    .equals(throwable.getMessage())) {
-                                notifyError(new UnableToAccessMicrophoneException());
-                            } else {
-                                notifyError(throwable);
-                            }
+                            notifyError(throwable);
                             onInactive();
                         }));
 
@@ -122,7 +130,13 @@ public class VoskInputDevice extends SpeechInputDevice {
                 final DownloadManager downloadManager =
                         (DownloadManager) activity.getSystemService(Context.DOWNLOAD_SERVICE);
 
-                if (currentModelDownloadId == null) {
+                if (currentModelDownloadId == null && getModelZipFile().exists()
+                        && getModelExtractor().hasPartialExtraction()) {
+                    // the app was closed while the model was being extracted, so resume
+                    Log.d(TAG, "Resuming Vosk model extraction");
+                    startExtractingModel(downloadManager);
+
+                } else if (currentModelDownloadId == null) {
                     Log.d(TAG, "Vosk model is not already being downloaded");
 
                     if (manual) {
@@ -130,16 +144,28 @@ public class VoskInputDevice extends SpeechInputDevice {
                         // the user manually triggered the input device, so he surely wants the
                         // model to be downloaded, so we can proceed
                         onLoading();
-                        try {
-                            final LocaleResolutionResult result = resolveSupportedLocale(
-                                    LocaleListCompat.create(Sections.getCurrentLocale()),
-                                    MODEL_URLS.keySet());
-                            startDownloadingModel(downloadManager, result.supportedLocaleString);
-                        } catch (final UnsupportedLocaleException e) {
-                            asyncMakeToast(R.string.vosk_model_unsupported_language);
-                            e.printStackTrace();
-                            onRequiresDownload();
-                        }
+                        final VoskModelRepository repository = getModelRepository(activity);
+                        disposables.add(Single.fromCallable(repository::getModels)
+                                .subscribeOn(Schedulers.io())
+                                .observeOn(AndroidSchedulers.mainThread())
+                                .subscribe(models -> {
+                                    try {
+                                        final LocaleResolutionResult result =
+                                                resolveSupportedLocale(Collections.singletonList(
+                                                        Sections.getCurrentLocale()),
+                                                        models.keySet());
+                                        startDownloadingModel(downloadManager,
+                                                models.get(result.supportedLocaleString));
+                                    } catch (final UnsupportedLocaleException e) {
+                                        asyncMakeToast(R.string.vosk_model_unsupported_language);
+                                        e.printStackTrace();
+                                        onRequiresDownload();
+                                    }
+                                }, throwable -> {
+                                    asyncMakeToast(R.string.vosk_model_repository_error);
+                                    throwable.printStackTrace();
+                                    onRequiresDownload();
+                                }));
 
                     } else {
                         // loading the model would require downloading it, but the user didn't
@@ -159,10 +185,33 @@ public class VoskInputDevice extends SpeechInputDevice {
     public void cleanup() {
         super.cleanup();
         disposables.clear();
+        stopWakeWordDetection();
         if (speechService != null) {
              speechService.shutdown();
              speechService = null;
         }
+        if (grammarRecognizer != null) {
+            grammarRecognizer.close();
+            grammarRecognizer = null;
+        }
+
+        // the wake word thread may still be using the microphone and its recognizer, so release
+        // them once it is done, without blocking the main thread
+        final Thread detectorThread = wakeWordThread;
+        final FrameSource releasedMicrophone = microphone;
+        final Recognizer releasedWakeWordRecognizer = wakeWordRecognizer;
+        wakeWordThread = null;
+        microphone = null;
+        wakeWordRecognizer = null;
+        Schedulers.io().scheduleDirect(() -> {
+            joinUninterruptibly(detectorThread);
+            if (releasedWakeWordRecognizer != null) {
+                releasedWakeWordRecognizer.close();
+            }
+            if (releasedMicrophone != null) {
+                releasedMicrophone.release();
+            }
+        });
 
         if (currentModelDownloadId != null) {
             final DownloadManager downloadManager =
@@ -193,27 +242,28 @@ public class VoskInputDevice extends SpeechInputDevice {
             return;
         }
         currentlyListening = true;
+        stopWakeWordDetection(); // the microphone is needed by the speech service
         super.tryToGetInput(manual);
 
         Log.d(TAG, "starting recognizer");
 
-        speechService.startListening(new RecognitionListener() {
+        speechService.startListening(getListeningRecognizer(), wakeWordThread,
+                new RecognitionListener() {
+            // the partial result often does not change between two calls, e.g. during silence
+            @Nullable private String lastPartialInput = null;
 
             @Override
             public void onPartialResult(final String s) {
-                Log.d(TAG, "onPartialResult called with s = " + s);
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "onPartialResult called with s = " + s);
+                }
                 if (!currentlyListening) {
                     return;
                 }
 
-                String partialInput = null;
-                try {
-                    partialInput = new JSONObject(s).getString("partial");
-                } catch (final JSONException e) {
-                    e.printStackTrace();
-                }
-
-                if (!isNullOrEmpty(partialInput)) {
+                final String partialInput = VoskResultParser.parsePartial(s, lastPartialInput);
+                if (partialInput != lastPartialInput && !isNullOrEmpty(partialInput)) {
+                    lastPartialInput = partialInput;
                     notifyPartialInputReceived(partialInput);
                 }
             }
@@ -227,25 +277,18 @@ public class VoskInputDevice extends SpeechInputDevice {
 
                 stopRecognizer();
 
-                final ArrayList<String> inputs = new ArrayList<>();
-                try {
-                    final JSONObject jsonResult = new JSONObject(s);
-                    final int size = jsonResult.getJSONArray("alternatives").length();
-                    for (int i = 0; i < size; i++) {
-                        final String text = jsonResult.getJSONArray("alternatives")
-                                .getJSONObject(i).getString("text");
-                        if (!isNullOrEmpty(text)) {
-                            inputs.add(text);
-                        }
+                // the confidences are used to weigh the alternatives when ranking skills
+                final ArrayList<InputHypothesis> inputs = new ArrayList<>();
+                VoskResultParser.parseResult(s, (text, confidence) -> {
+                    if (!isNullOrEmpty(text)) {
+                        inputs.add(new InputHypothesis(text, confidence));
                     }
-                } catch (final JSONException e) {
-                    e.printStackTrace();
-                }
+                });
 
                 if (inputs.isEmpty()) {
                     notifyNoInputReceived();
                 } else {
-                    notifyInputReceived(inputs);
+                    notifyScoredInputReceived(inputs);
                 }
             }
 
@@ -289,6 +332,18 @@ public class VoskInputDevice extends SpeechInputDevice {
         currentlyListening = false;
     }
 
+    @Override
+    public void onPause() {
+        paused = true;
+        stopWakeWordDetection();
+    }
+
+    @Override
+    public void onResume() {
+        paused = false;
+        startWakeWordDetection();
+    }
+
 
     public static void deleteCurrentModel(final Context context) {
         final DownloadManager downloadManager =
@@ -298,19 +353,97 @@ public class VoskInputDevice extends SpeechInputDevice {
             downloadManager.remove(modelDownloadId);
         }
 
-        deleteFolder(new File(context.getFilesDir(), MODEL_PATH));
+        VoskModelHolder.release();
+        final File modelDirectory = new File(context.getFilesDir(), MODEL_PATH);
+        new VoskModelExtractor(new File(context.getExternalFilesDir(null), MODEL_ZIP_FILENAME),
+                modelDirectory).discardPartialExtraction();
+        VoskModelExtractor.deleteFolder(modelDirectory);
     }
 
   //initializing
 
-    private synchronized void initializeRecognizer() throws IOException {
+    private synchronized void initializeRecognizer()
+            throws IOException, UnableToAccessMicrophoneException {
         Log.d(TAG, "initializing recognizer");
 
-        LibVosk.setLogLevel(BuildConfig.DEBUG ? LogLevel.DEBUG : LogLevel.WARNINGS);
-        final Model model = new Model(getModelDirectory().getAbsolutePath());
-        final Recognizer recognizer = new Recognizer(model, SAMPLE_RATE);
+        // the model is loaded only the first time, and then kept in memory
+        this.model = VoskModelHolder.getModel(getModelDirectory());
+        // record at the rate of the model, so that the audio does not need to be resampled
+        this.sampleRate = readModelSampleRate(getModelDirectory());
+        final Recognizer recognizer = new Recognizer(model, sampleRate);
         recognizer.setMaxAlternatives(5);
-        this.speechService = new SpeechService(recognizer, SAMPLE_RATE);
+
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(activity);
+        final int endSilenceMillis = prefs.getInt(
+                activity.getString(R.string.pref_key_vosk_end_silence),
+                activity.getResources().getInteger(R.integer.pref_vosk_end_silence_default));
+        this.microphone = new MicrophoneFrameSource(sampleRate,
+                VoskSpeechService.getMinBufferSamples(sampleRate));
+        this.speechService = new VoskSpeechService(recognizer, microphone,
+                new VoskSpeechService.EndpointerConfig(endSilenceMillis,
+                        NO_SPEECH_TIMEOUT_MILLIS, MAX_SPEECH_MILLIS));
+
+        if (prefs.getBoolean(activity.getString(R.string.pref_key_wake_word), false)) {
+            this.wakePhrase = prefs.getString(
+                    activity.getString(R.string.pref_key_wake_word_phrase),
+                    activity.getString(R.string.pref_wake_word_phrase_default));
+            this.wakeWordRecognizer = new Recognizer(model, sampleRate,
+                    WakeWordDetector.buildGrammar(wakePhrase));
+        }
+    }
+
+    private static int readModelSampleRate(final File modelDirectory) {
+        final File mfccConf = new File(modelDirectory, "conf/mfcc.conf");
+        try (BufferedReader reader = new BufferedReader(new FileReader(mfccConf))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String option = line.trim();
+                if (option.startsWith("--sample-frequency=")) {
+                    return (int) Float.parseFloat(
+                            option.substring("--sample-frequency=".length()).trim());
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            Log.w(TAG, "Could not read the sample rate of the model", e);
+        }
+        return DEFAULT_SAMPLE_RATE;
+    }
+
+    // Restricting the recognizer to the few words the skills expect (e.g. after a yes/no question)
+    // makes decoding faster, and avoids misrecognizing them as similar sounding words. Vosk still
+    // outputs "[unk]" for anything else, which is then ignored by the skills.
+    @Override
+    public synchronized void setVocabularyHint(@Nullable final String[] words) {
+        vocabularyHint = words;
+    }
+
+    @Nullable
+    private synchronized Recognizer getListeningRecognizer() {
+        if (vocabularyHint == null || model == null) {
+            return null; // use the speech service's recognizer, which understands anything
+        }
+
+        if (grammarRecognizer == null || !Arrays.equals(grammarRecognizerWords, vocabularyHint)) {
+            final JSONArray grammar = new JSONArray();
+            for (final String word : vocabularyHint) {
+                grammar.put(word);
+            }
+            grammar.put("[unk]");
+
+            try {
+                final Recognizer recognizer = new Recognizer(model, sampleRate, grammar.toString());
+                recognizer.setMaxAlternatives(5);
+                if (grammarRecognizer != null) {
+                    grammarRecognizer.close();
+                }
+                grammarRecognizer = recognizer;
+                grammarRecognizerWords = vocabularyHint;
+            } catch (final IOException e) {
+                Log.w(TAG, "Could not build grammar recognizer, using the full one", e);
+                return null;
+            }
+        }
+        return grammarRecognizer;
     }
 
     private void stopRecognizer() {
@@ -321,23 +454,110 @@ public class VoskInputDevice extends SpeechInputDevice {
         }
 
         onInactive();
+        startWakeWordDetection();
+    }
+
+
+    //wake word
+
+    // listens for the wake phrase while the app is in the foreground and the speech service is
+    // not listening
+    private void startWakeWordDetection() {
+        if (wakeWordRecognizer == null || wakePhrase == null || microphone == null
+                || wakeWordDetector != null || currentlyListening || paused) {
+            return;
+        }
+
+        final Activity detectorActivity = activity;
+        final FrameSource detectorMicrophone = microphone;
+        final WakeWordDetector detector =
+                new WakeWordDetector(wakeWordRecognizer, wakePhrase, false);
+        final Thread previousThread = wakeWordThread;
+        wakeWordDetector = detector;
+        wakeWordThread = new Thread(() -> {
+            boolean detected = false;
+            try {
+                // a previous detector may still be using the microphone and the recognizer
+                joinUninterruptibly(previousThread);
+                detectorMicrophone.start();
+                detected = detector.run(detectorMicrophone);
+            } catch (final IOException e) {
+                Log.w(TAG, "Wake word detection failed", e);
+            } finally {
+                detectorMicrophone.stop();
+            }
+
+            if (detected) {
+                detectorActivity.runOnUiThread(() -> {
+                    if (wakeWordDetector == detector) { // otherwise stopped in the meantime
+                        Log.d(TAG, "Wake word detected");
+                        wakeWordDetector = null;
+                        wakeWordThread = null;
+                        tryToGetInput(false);
+                    }
+                });
+            }
+        }, WakeWordDetector.class.getSimpleName());
+        wakeWordThread.start();
+    }
+
+    // Only signals the detector to stop, without waiting for it, since it is called on the main
+    // thread: whoever uses the microphone next has to join wakeWordThread first.
+    private void stopWakeWordDetection() {
+        if (wakeWordDetector != null) {
+            wakeWordDetector.stop();
+            wakeWordDetector = null;
+        }
+    }
+
+    private static void joinUninterruptibly(@Nullable final Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 
     //downloading models
 
     private void startDownloadingModel(final DownloadManager downloadManager,
-                                       final String language) {
-        asyncMakeToast(R.string.vosk_model_downloading);
+                                       final VoskModelRepository.ModelInfo model) {
         final File modelZipFile = getModelZipFile();
         modelZipFile.delete(); // if existing, delete the model zip file (should never happen)
+        getModelExtractor().discardPartialExtraction(); // it could belong to another model
+        updateCurrentModel(activity, model);
+
+        if (model.isLocalFile()) {
+            // sideloaded model, no need to go through the download manager
+            Log.d(TAG, "Copying vosk model from " + model.url);
+            disposables.add(Completable.fromAction(() -> copyModelZip(model))
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(() -> startExtractingModel(downloadManager), throwable -> {
+                        asyncMakeToast(R.string.vosk_model_download_error);
+                        throwable.printStackTrace();
+                        onInactive();
+                    }));
+            return;
+        }
+        asyncMakeToast(R.string.vosk_model_downloading);
 
         // build download manager request
-        final String modelUrl = MODEL_URLS.get(language);
-        final DownloadManager.Request request = new DownloadManager.Request(Uri.parse(modelUrl))
+        final DownloadManager.Request request = new DownloadManager.Request(Uri.parse(model.url))
                 .setTitle(activity.getString(R.string.vosk_model_notification_title))
                 .setDescription(activity.getString(
-                        R.string.vosk_model_notification_description, language))
+                        R.string.vosk_model_notification_description, model.locale))
                 .setDestinationUri(Uri.fromFile(modelZipFile));
 
         // setup download completion listener
@@ -375,26 +595,7 @@ public class VoskInputDevice extends SpeechInputDevice {
                     }
 
                     Log.d(TAG, "Vosk model download complete, extracting from zip");
-                    disposables.add(Completable
-                            .fromAction(VoskInputDevice.this::extractModelZip)
-                            .subscribeOn(Schedulers.io())
-                            .observeOn(AndroidSchedulers.mainThread())
-                            .subscribe(() -> {
-                                        asyncMakeToast(R.string.vosk_model_ready);
-                                        downloadManager.remove(currentModelDownloadId);
-                                        updateCurrentDownloadId(activity, null);
-
-                                        // surely the user pressed a button a while ago that
-                                        // triggered the download process, so manual=true
-                                        load(true);
-                                    },
-                                    throwable -> {
-                                        asyncMakeToast(R.string.vosk_model_extraction_error);
-                                        throwable.printStackTrace();
-                                        downloadManager.remove(currentModelDownloadId);
-                                        updateCurrentDownloadId(activity, null);
-                                        onInactive();
-                                    }));
+                    startExtractingModel(downloadManager);
                 }
             }
         };
@@ -405,56 +606,87 @@ public class VoskInputDevice extends SpeechInputDevice {
         updateCurrentDownloadId(activity, downloadManager.enqueue(request));
     }
 
-    private void extractModelZip() throws IOException {
-        asyncMakeToast(R.string.vosk_model_extracting);
-
-        try (ZipInputStream zipInputStream =
-                     new ZipInputStream(new FileInputStream(getModelZipFile()))) {
-            ZipEntry entry; // cycles through all entries
-            while ((entry = zipInputStream.getNextEntry()) != null) {
-                final File destinationFile = getDestinationFile(entry.getName());
+    private void startExtractingModel(final DownloadManager downloadManager) {
+        onLoading();
+        disposables.add(Completable.fromAction(this::extractModelZip)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> {
+                            asyncMakeToast(R.string.vosk_model_ready);
+                            removeModelZip(downloadManager);
+
+                            // surely the user pressed a button a while ago that triggered the
+                            // download process, so manual=true
+                            load(true);
+                        },
+                        throwable -> {
+                            asyncMakeToast(R.string.vosk_model_extraction_error);
+                            throwable.printStackTrace();
+                            // the zip itself is corrupted, so extracting it again is useless
+                            getModelExtractor().discardPartialExtraction();
+                            removeModelZip(downloadManager);
+                            onInactive();
+                        }));
+    }
 
-                if (entry.isDirectory()) {
-                    // create directory
-                    if (!destinationFile.mkdirs()) {
-                        throw new IOException("mkdirs failed: " + destinationFile);
-                    }
+    private void extractModelZip() throws IOException, InterruptedException {
+        asyncMakeToast(R.string.vosk_model_extracting);
+        if (currentModel == null) {
+            // resuming the extraction of a model downloaded before the app was closed
+            currentModel = getModelFromPreferences(activity);
+        }
+        if (currentModel == null) {
+            throw new IOException("Vosk model zip of unknown origin: " + getModelZipFile());
+        }
+        currentModel.verify(getModelZipFile());
+        getModelExtractor().extract();
+    }
 
-                } else {
-                    // copy file
-                    try (BufferedOutputStream outputStream = new BufferedOutputStream(
-                            new FileOutputStream(destinationFile))) {
-                        final byte[] buffer = new byte[1024];
-                        int length;
-                        while ((length = zipInputStream.read(buffer)) > 0) {
-                            outputStream.write(buffer, 0, length);
-                        }
-                        outputStream.flush();
-                    }
-                }
+    private void copyModelZip(final VoskModelRepository.ModelInfo model) throws IOException {
+        final File source;
+        try {
+            source = new File(new URI(model.url));
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid Vosk model path " + model.url, e);
+        }
 
-                zipInputStream.closeEntry();
+        try (InputStream inputStream = new FileInputStream(source);
+             OutputStream outputStream = new FileOutputStream(getModelZipFile())) {
+            final byte[] buffer = new byte[64 * 1024];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, length);
             }
         }
     }
 
+    private void removeModelZip(final DownloadManager downloadManager) {
+        if (currentModelDownloadId != null) {
+            downloadManager.remove(currentModelDownloadId);
+            updateCurrentDownloadId(activity, null);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        getModelZipFile().delete();
+        updateCurrentModel(activity, null);
+    }
+
 
     //files utilities
 
-    private File getDestinationFile(final String entryName) throws IOException {
-        // model files are under a subdirectory, so get the path after the first /
-        final String filePath = entryName.substring(entryName.indexOf('/') + 1);
-        final File destinationDirectory = getModelDirectory();
-
-        // protect from Zip Slip vulnerability (!)
-        final File destinationFile = new File(destinationDirectory, filePath);
-        if (!destinationDirectory.getCanonicalPath().equals(destinationFile.getCanonicalPath())
-                && !destinationFile.getCanonicalPath().startsWith(
-                        destinationDirectory.getCanonicalPath() + File.separator)) {
-            throw new IOException("Entry is outside of the target dir: " + entryName);
+    // the repository set in settings, or the official one if none is set
+    private static VoskModelRepository getModelRepository(final Context context) {
+        final String manifestUrl = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.pref_key_vosk_model_repository), "")
+                .trim();
+        if (manifestUrl.isEmpty()) {
+            return new DefaultVoskModelRepository();
+        } else {
+            return new ManifestVoskModelRepository(manifestUrl);
         }
+    }
 
-        return destinationFile;
+    private VoskModelExtractor getModelExtractor() {
+        return new VoskModelExtractor(getModelZipFile(), getModelDirectory());
     }
 
     private File getModelDirectory() {
@@ -465,22 +697,6 @@ public class VoskInputDevice extends SpeechInputDevice {
         return new File(activity.getExternalFilesDir(null), MODEL_ZIP_FILENAME);
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private static void deleteFolder(final File file) {
-        final File[] subFiles = file.listFiles();
-        if (subFiles != null) {
-            for (final File subFile : subFiles) {
-                if (subFile.isDirectory()) {
-                    deleteFolder(subFile);
-                } else {
-                    subFile.delete();
-                }
-            }
-        }
-        file.delete();
-    }
-
-
     // Download id utilities
 
     private static Long getDownloadIdFromPreferences(final Context context,
@@ -515,6 +731,37 @@ public class VoskInputDevice extends SpeechInputDevice {
         }
     }
 
+    // only the size and the SHA-256 are stored, since they are all that is needed for verify()
+    @Nullable
+    private static VoskModelRepository.ModelInfo getModelFromPreferences(final Context context) {
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String sizeKey = context.getString(R.string.pref_key_vosk_download_size);
+        if (!prefs.contains(sizeKey)) {
+            return null;
+        }
+        return new VoskModelRepository.ModelInfo(Sections.getCurrentLocale().toString(),
+                Uri.fromFile(new File(context.getExternalFilesDir(null), MODEL_ZIP_FILENAME))
+                        .toString(),
+                prefs.getLong(sizeKey, -1),
+                prefs.getString(context.getString(R.string.pref_key_vosk_download_sha256), null));
+    }
+
+    private void updateCurrentModel(final Context context,
+                                    @Nullable final VoskModelRepository.ModelInfo model) {
+        currentModel = model;
+
+        final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        final String sizeKey = context.getString(R.string.pref_key_vosk_download_size);
+        final String sha256Key = context.getString(R.string.pref_key_vosk_download_sha256);
+        if (model == null) {
+            prefs.edit().remove(sizeKey).remove(sha256Key).apply();
+        } else if (model.sha256 == null) {
+            prefs.edit().putLong(sizeKey, model.size).remove(sha256Key).apply();
+        } else {
+            prefs.edit().putLong(sizeKey, model.size).putString(sha256Key, model.sha256).apply();
+        }
+    }
+
 
     // Other utilities
 
@@ -0,0 +1,249 @@
+package com.ensias.ihearu.input;
+
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// Extracts a Vosk model zip. Entries are inflated concurrently (ZipFile allows random access to
+// them) into a staging directory, which is renamed to the destination only once everything has
+// been extracted and verified, so that a partially extracted model is never loaded. Every
+// extracted file is recorded in a manifest along with its size and CRC-32: if the extraction is
+// interrupted, the files already in the manifest are not extracted again the next time.
+public final class VoskModelExtractor {
+
+    public static final String MANIFEST_FILENAME = "manifest.txt";
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final int MAX_WORKERS = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static class ManifestEntry {
+        final long size;
+        final long crc;
+
+        ManifestEntry(final long size, final long crc) {
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    private final File zipFile;
+    private final File destinationDirectory;
+    private final File stagingDirectory;
+
+
+    public VoskModelExtractor(final File zipFile, final File destinationDirectory) {
+        this.zipFile = zipFile;
+        this.destinationDirectory = destinationDirectory;
+        this.stagingDirectory = new File(destinationDirectory.getParentFile(),
+                destinationDirectory.getName() + STAGING_SUFFIX);
+    }
+
+    public void extract() throws IOException, InterruptedException {
+        if (!stagingDirectory.isDirectory() && !stagingDirectory.mkdirs()) {
+            throw new IOException("mkdirs failed: " + stagingDirectory);
+        }
+        final File manifestFile = new File(stagingDirectory, MANIFEST_FILENAME);
+        final Map<String, ManifestEntry> alreadyExtracted = readManifest(manifestFile);
+
+        try (ZipFile zip = new ZipFile(zipFile);
+             Writer manifest = new OutputStreamWriter(
+                     new FileOutputStream(manifestFile, true), StandardCharsets.UTF_8)) {
+
+            final List<ZipEntry> entriesToExtract = new ArrayList<>();
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                final File destinationFile = getDestinationFile(entry.getName());
+                if (entry.isDirectory()) {
+                    if (!destinationFile.isDirectory() && !destinationFile.mkdirs()) {
+                        throw new IOException("mkdirs failed: " + destinationFile);
+                    }
+                } else if (!isAlreadyExtracted(entry, destinationFile,
+                        alreadyExtracted.get(entry.getName()))) {
+                    entriesToExtract.add(entry);
+                }
+            }
+
+            // start from the biggest files, so that workers finish at about the same time
+            Collections.sort(entriesToExtract, (a, b) -> Long.compare(b.getSize(), a.getSize()));
+            final List<Callable<Void>> tasks = new ArrayList<>(entriesToExtract.size());
+            for (final ZipEntry entry : entriesToExtract) {
+                tasks.add(() -> {
+                    extractEntry(zip, entry, manifest);
+                    return null;
+                });
+            }
+            runAll(tasks);
+        }
+
+        // everything is in place, so atomically move the model to its final directory
+        deleteFolder(destinationDirectory);
+        if (!stagingDirectory.renameTo(destinationDirectory)) {
+            throw new IOException("Could not rename " + stagingDirectory
+                    + " to " + destinationDirectory);
+        }
+    }
+
+    public boolean hasPartialExtraction() {
+        return stagingDirectory.isDirectory();
+    }
+
+    // removes any partially extracted model, e.g. when a new one is going to be downloaded
+    public void discardPartialExtraction() {
+        deleteFolder(stagingDirectory);
+    }
+
+
+    private void extractEntry(final ZipFile zip, final ZipEntry entry, final Writer manifest)
+            throws IOException {
+        final File destinationFile = getDestinationFile(entry.getName());
+        final File parent = destinationFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("mkdirs failed: " + parent);
+        }
+
+        final CRC32 crc = new CRC32();
+        long size = 0;
+        try (InputStream inputStream = zip.getInputStream(entry);
+             FileOutputStream outputStream = new FileOutputStream(destinationFile)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = inputStream.read(buffer)) > 0) {
+                crc.update(buffer, 0, length);
+                outputStream.write(buffer, 0, length);
+                size += length;
+            }
+            // the manifest entry must never precede the file contents on the disk
+            outputStream.getFD().sync();
+        }
+
+        if ((entry.getSize() != -1 && size != entry.getSize())
+                || (entry.getCrc() != -1 && crc.getValue() != entry.getCrc())) {
+            //noinspection ResultOfMethodCallIgnored
+            destinationFile.delete();
+            throw new IOException("Corrupted zip entry: " + entry.getName());
+        }
+
+        synchronized (manifest) {
+            manifest.write(String.format(Locale.ROOT, "%d\t%08x\t%s\n",
+                    size, crc.getValue(), entry.getName()));
+            manifest.flush();
+        }
+    }
+
+    private static boolean isAlreadyExtracted(final ZipEntry entry,
+                                              final File destinationFile,
+                                              @Nullable final ManifestEntry manifestEntry) {
+        return manifestEntry != null
+                && manifestEntry.size == entry.getSize()
+                && manifestEntry.crc == entry.getCrc()
+                && destinationFile.length() == entry.getSize();
+    }
+
+    private static void runAll(final List<Callable<Void>> tasks)
+            throws IOException, InterruptedException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(Math.min(MAX_WORKERS, tasks.size()),
+                        Runtime.getRuntime().availableProcessors())));
+        try {
+            for (final Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (final ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // unreadable or truncated lines (e.g. because of a crash while writing) are just ignored
+    private static Map<String, ManifestEntry> readManifest(final File manifestFile) {
+        final Map<String, ManifestEntry> manifest = new HashMap<>();
+        if (!manifestFile.isFile()) {
+            return manifest;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split("\t", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+                try {
+                    manifest.put(parts[2], new ManifestEntry(
+                            Long.parseLong(parts[0]), Long.parseLong(parts[1], 16)));
+                } catch (final NumberFormatException ignored) {
+                    // skip this line
+                }
+            }
+        } catch (final IOException e) {
+            manifest.clear(); // extract everything again
+        }
+        return manifest;
+    }
+
+    private File getDestinationFile(final String entryName) throws IOException {
+        // model files are under a subdirectory, so get the path after the first /
+        final String filePath = entryName.substring(entryName.indexOf('/') + 1);
+
+        // protect from Zip Slip vulnerability (!)
+        final File destinationFile = new File(stagingDirectory, filePath);
+        if (!stagingDirectory.getCanonicalPath().equals(destinationFile.getCanonicalPath())
+                && !destinationFile.getCanonicalPath().startsWith(
+                        stagingDirectory.getCanonicalPath() + File.separator)) {
+            throw new IOException("Entry is outside of the target dir: " + entryName);
+        }
+
+        return destinationFile;
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    static void deleteFolder(final File file) {
+        final File[] subFiles = file.listFiles();
+        if (subFiles != null) {
+            for (final File subFile : subFiles) {
+                if (subFile.isDirectory()) {
+                    deleteFolder(subFile);
+                } else {
+                    subFile.delete();
+                }
+            }
+        }
+        file.delete();
+    }
+}
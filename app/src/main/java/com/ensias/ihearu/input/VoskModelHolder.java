@@ -0,0 +1,51 @@
+package com.ensias.ihearu.input;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.BuildConfig;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+
+import java.io.File;
+import java.io.IOException;
+
+// Keeps the Vosk model loaded for the whole lifetime of the process. Loading a model takes
+// seconds, while the input device is rebuilt every time the activity is (re)created, e.g. when
+// coming back from settings: with this only the (cheap) recognizer needs to be rebuilt.
+public final class VoskModelHolder {
+
+    public static final String TAG = VoskModelHolder.class.getSimpleName();
+
+    @Nullable private static Model model = null;
+    @Nullable private static String modelPath = null;
+
+    private VoskModelHolder() {
+    }
+
+    // loads the model only if it was not already loaded from the same directory
+    public static synchronized Model getModel(final File modelDirectory) throws IOException {
+        final String path = modelDirectory.getAbsolutePath();
+        if (model == null || !path.equals(modelPath)) {
+            release();
+
+            Log.d(TAG, "loading Vosk model from " + path);
+            LibVosk.setLogLevel(BuildConfig.DEBUG ? LogLevel.DEBUG : LogLevel.WARNINGS);
+            model = new Model(path);
+            modelPath = path;
+        }
+        return model;
+    }
+
+    // to be called when the model files are deleted or replaced; Vosk models are reference
+    // counted, so recognizers still using the model keep working until they are closed
+    public static synchronized void release() {
+        if (model != null) {
+            model.close();
+            model = null;
+            modelPath = null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ensias.ihearu.input;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+
+// A source of Vosk models, e.g. the official one, an internal mirror or a sideloaded directory
+public interface VoskModelRepository {
+
+    class ModelInfo {
+        public final String locale;
+        // an http(s) url, or a file:// url for models already available on the device
+        public final String url;
+        // -1 if unknown
+        public final long size;
+        // lowercase hex string, or null if unknown
+        @Nullable public final String sha256;
+
+        public ModelInfo(final String locale,
+                         final String url,
+                         final long size,
+                         @Nullable final String sha256) {
+            this.locale = locale;
+            this.url = url;
+            this.size = size;
+            this.sha256 = sha256 == null ? null : sha256.toLowerCase(Locale.ROOT);
+        }
+
+        public boolean isLocalFile() {
+            return url.startsWith("file:");
+        }
+
+        // makes sure the downloaded zip is the one described by the repository, if the repository
+        // provided any information about it
+        public void verify(final File zipFile) throws IOException {
+            if (size >= 0 && zipFile.length() != size) {
+                throw new IOException("Wrong model size: expected " + size
+                        + ", got " + zipFile.length());
+            }
+            if (sha256 == null) {
+                return;
+            }
+
+            final MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (final NoSuchAlgorithmException e) {
+                // SHA-256 is always available on Android
+                throw new IllegalStateException(e);
+            }
+            try (InputStream inputStream = new FileInputStream(zipFile)) {
+                final byte[] buffer = new byte[64 * 1024];
+                int length;
+                while ((length = inputStream.read(buffer)) > 0) {
+                    digest.update(buffer, 0, length);
+                }
+            }
+
+            final StringBuilder actualSha256 = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                actualSha256.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            if (!sha256.equals(actualSha256.toString())) {
+                throw new IOException("Wrong model SHA-256: expected " + sha256
+                        + ", got " + actualSha256);
+            }
+        }
+    }
+
+    // the available models by locale; could access the network, do not call on the main thread
+    Map<String, ModelInfo> getModels() throws IOException;
+}
@@ -0,0 +1,343 @@
+package com.ensias.ihearu.input;
+
+import androidx.annotation.Nullable;
+
+// Reads the JSON results produced by Vosk recognizers, which look like these:
+// {"partial" : "turn on the"}
+// {"text" : "turn on the light"}
+// {"alternatives" : [{"confidence" : 351.2, "text" : "turn on the light"}, ...]}
+// The string is scanned in place, without building JSONObjects or copying anything but the texts,
+// since partial results arrive several times per second while the user is talking. Unknown fields
+// (e.g. "result" with word timings) are skipped, and malformed input results in nothing being
+// found rather than in an exception.
+public final class VoskResultParser {
+
+    public interface AlternativeConsumer {
+        // confidence is NaN if the recognizer did not provide it (i.e. without alternatives)
+        void accept(String text, float confidence);
+    }
+
+    private final String json;
+    private int pos = 0;
+
+    private VoskResultParser(final String json) {
+        this.json = json;
+    }
+
+
+    // Returns the "partial" field, or null if missing. If it has the same content as
+    // previousPartial, previousPartial itself is returned, so that no new string is allocated
+    // and the caller can quickly check whether the partial result changed.
+    @Nullable
+    public static String parsePartial(final String json, @Nullable final String previousPartial) {
+        final VoskResultParser parser = new VoskResultParser(json);
+        if (!parser.consume('{')) {
+            return null;
+        }
+
+        do {
+            final int keyStart = parser.pos;
+            if (!parser.skipString() || !parser.consume(':')) {
+                return null;
+            }
+
+            if (parser.keyEquals(keyStart, "partial")) {
+                return parser.readString(previousPartial);
+            } else if (!parser.skipValue()) {
+                return null;
+            }
+        } while (parser.consume(','));
+        return null;
+    }
+
+    // Calls the consumer for every alternative in the "alternatives" array (in the order chosen
+    // by the recognizer, i.e. most likely first), or for the "text" field if there are no
+    // alternatives. Returns the number of alternatives found.
+    public static int parseResult(final String json, final AlternativeConsumer consumer) {
+        final VoskResultParser parser = new VoskResultParser(json);
+        if (!parser.consume('{')) {
+            return 0;
+        }
+
+        int count = 0;
+        do {
+            final int keyStart = parser.pos;
+            if (!parser.skipString() || !parser.consume(':')) {
+                return count;
+            }
+
+            if (parser.keyEquals(keyStart, "alternatives")) {
+                if (!parser.consume('[')) {
+                    return count;
+                }
+                if (parser.consume(']')) {
+                    continue;
+                }
+                do {
+                    if (!parser.parseAlternative(consumer)) {
+                        return count;
+                    }
+                    ++count;
+                } while (parser.consume(','));
+                if (!parser.consume(']')) {
+                    return count;
+                }
+
+            } else if (parser.keyEquals(keyStart, "text")) {
+                final String text = parser.readString(null);
+                if (text == null) {
+                    return count;
+                }
+                consumer.accept(text, Float.NaN);
+                ++count;
+
+            } else if (!parser.skipValue()) {
+                return count;
+            }
+        } while (parser.consume(','));
+        return count;
+    }
+
+
+    private boolean parseAlternative(final AlternativeConsumer consumer) {
+        if (!consume('{')) {
+            return false;
+        }
+
+        String text = null;
+        float confidence = Float.NaN;
+        do {
+            final int keyStart = pos;
+            if (!skipString() || !consume(':')) {
+                return false;
+            }
+
+            if (keyEquals(keyStart, "text")) {
+                text = readString(null);
+                if (text == null) {
+                    return false;
+                }
+            } else if (keyEquals(keyStart, "confidence")) {
+                confidence = readNumber();
+                if (Float.isNaN(confidence)) {
+                    return false;
+                }
+            } else if (!skipValue()) {
+                return false;
+            }
+        } while (consume(','));
+
+        if (!consume('}')) {
+            return false;
+        }
+        if (text != null) {
+            consumer.accept(text, confidence);
+        }
+        return true;
+    }
+
+
+    ////////////////////
+    // Scanning utils //
+    ////////////////////
+
+    private void skipWhitespace() {
+        while (pos < json.length() && json.charAt(pos) <= ' ') {
+            ++pos;
+        }
+    }
+
+    // skips whitespace and then the character c, if present
+    private boolean consume(final char c) {
+        skipWhitespace();
+        if (pos < json.length() && json.charAt(pos) == c) {
+            ++pos;
+            return true;
+        }
+        return false;
+    }
+
+    // keyStart is the position of the opening quote (or of whitespace before it) of a key that
+    // has already been skipped; keys never contain escapes in Vosk results
+    private boolean keyEquals(final int keyStart, final String key) {
+        final int quote = json.indexOf('"', keyStart);
+        return json.startsWith(key, quote + 1) && json.charAt(quote + 1 + key.length()) == '"';
+    }
+
+    private boolean skipString() {
+        if (!consume('"')) {
+            return false;
+        }
+        while (pos < json.length()) {
+            final char c = json.charAt(pos++);
+            if (c == '"') {
+                return true;
+            } else if (c == '\\') {
+                ++pos;
+            }
+        }
+        return false;
+    }
+
+    // returns reuse if the string has the same content, to avoid allocating a new string
+    @Nullable
+    private String readString(@Nullable final String reuse) {
+        if (!consume('"')) {
+            return null;
+        }
+
+        final int start = pos;
+        while (pos < json.length()) {
+            final char c = json.charAt(pos);
+            if (c == '"') {
+                final int length = pos - start;
+                ++pos;
+                if (reuse != null && reuse.length() == length
+                        && json.regionMatches(start, reuse, 0, length)) {
+                    return reuse;
+                }
+                return json.substring(start, start + length);
+            } else if (c == '\\') {
+                pos = start;
+                return readEscapedString();
+            }
+            ++pos;
+        }
+        return null;
+    }
+
+    // slow path, only for strings with escapes (which Vosk produces e.g. for non-ASCII text
+    // depending on the version), pos is right after the opening quote
+    @Nullable
+    private String readEscapedString() {
+        final StringBuilder builder = new StringBuilder();
+        while (pos < json.length()) {
+            final char c = json.charAt(pos++);
+            if (c == '"') {
+                return builder.toString();
+            } else if (c != '\\') {
+                builder.append(c);
+            } else if (pos < json.length()) {
+                final char escaped = json.charAt(pos++);
+                switch (escaped) {
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > json.length()) {
+                            return null;
+                        }
+                        try {
+                            builder.append((char) Integer.parseInt(
+                                    json.substring(pos, pos + 4), 16));
+                        } catch (final NumberFormatException e) {
+                            return null;
+                        }
+                        pos += 4;
+                        break;
+                    default: // " \ /
+                        builder.append(escaped);
+                        break;
+                }
+            }
+        }
+        return null;
+    }
+
+    // parses numbers without allocating a substring; returns NaN if there is no valid number
+    private float readNumber() {
+        skipWhitespace();
+        final int start = pos;
+        final boolean negative = pos < json.length() && json.charAt(pos) == '-';
+        if (negative) {
+            ++pos;
+        }
+
+        double value = 0;
+        int digits = 0;
+        while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
+            value = value * 10 + (json.charAt(pos++) - '0');
+            ++digits;
+        }
+        if (pos < json.length() && json.charAt(pos) == '.') {
+            ++pos;
+            double scale = 0.1;
+            while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
+                value += (json.charAt(pos++) - '0') * scale;
+                scale /= 10;
+                ++digits;
+            }
+        }
+        if (digits == 0) {
+            pos = start;
+            return Float.NaN;
+        }
+
+        if (pos < json.length() && (json.charAt(pos) == 'e' || json.charAt(pos) == 'E')) {
+            ++pos;
+            final boolean negativeExponent = pos < json.length() && json.charAt(pos) == '-';
+            if (negativeExponent || (pos < json.length() && json.charAt(pos) == '+')) {
+                ++pos;
+            }
+            int exponent = 0;
+            while (pos < json.length() && Character.isDigit(json.charAt(pos))) {
+                exponent = exponent * 10 + (json.charAt(pos++) - '0');
+            }
+            value *= Math.pow(10, negativeExponent ? -exponent : exponent);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    // skips any JSON value, including nested objects and arrays (e.g. word timings)
+    private boolean skipValue() {
+        skipWhitespace();
+        if (pos >= json.length()) {
+            return false;
+        }
+
+        final char c = json.charAt(pos);
+        if (c == '"') {
+            return skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            while (pos < json.length()) {
+                final char current = json.charAt(pos);
+                if (current == '"') {
+                    if (!skipString()) {
+                        return false;
+                    }
+                    continue;
+                } else if (current == '{' || current == '[') {
+                    ++depth;
+                } else if (current == '}' || current == ']') {
+                    --depth;
+                    if (depth == 0) {
+                        ++pos;
+                        return true;
+                    }
+                }
+                ++pos;
+            }
+            return false;
+        } else {
+            // number, true, false or null
+            final int start = pos;
+            while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+                ++pos;
+            }
+            return pos > start;
+        }
+    }
+}
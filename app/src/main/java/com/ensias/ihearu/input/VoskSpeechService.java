@@ -0,0 +1,216 @@
+package com.ensias.ihearu.input;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import org.vosk.Recognizer;
+import org.vosk.android.RecognitionListener;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+// Replaces Vosk's SpeechService. Audio is recorded directly at the sample rate of the model, so
+// that Vosk does not need to resample it, and goes through an energy endpointer before reaching
+// the recognizer: silence before the speech is not fed to the recognizer at all (except for a
+// short pre-roll, not to cut the first syllable), and the result is produced as soon as the
+// endpointer detects enough silence after the speech. Listener methods are called on the main
+// thread, with the same semantics as with SpeechService. A different recognizer can be used for
+// each recognition, e.g. one restricted to a grammar.
+public final class VoskSpeechService {
+
+    public static final String TAG = VoskSpeechService.class.getSimpleName();
+
+    public static class EndpointerConfig {
+        public final int endSilenceMillis;
+        public final int noSpeechTimeoutMillis;
+        public final int maxSpeechMillis;
+
+        public EndpointerConfig(final int endSilenceMillis,
+                                final int noSpeechTimeoutMillis,
+                                final int maxSpeechMillis) {
+            this.endSilenceMillis = endSilenceMillis;
+            this.noSpeechTimeoutMillis = noSpeechTimeoutMillis;
+            this.maxSpeechMillis = maxSpeechMillis;
+        }
+    }
+
+    private static final int CHUNK_MILLIS = 100;
+    private static final int PRE_ROLL_CHUNKS = 3;
+
+    private final Recognizer recognizer;
+    private final FrameSource frameSource;
+    private final int chunkSize;
+    private final EndpointerConfig endpointerConfig;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Nullable private Thread recognizerThread = null;
+    // Changed (only while holding the lock on this) by every startListening() and stop(), so that
+    // a recognition, and the listener calls it posted, know they are stale once it changes. A
+    // single flag would not do, since a stop() followed by a startListening() within the same
+    // main thread message would make the calls posted by the previous recognition valid again.
+    private volatile long currentRecognition = 0;
+
+
+    // the frame source is shared with other users (e.g. the wake word detector), so it is
+    // started and stopped for every recognition, but never released
+    public VoskSpeechService(final Recognizer recognizer,
+                             final FrameSource frameSource,
+                             final EndpointerConfig endpointerConfig) {
+        this.recognizer = recognizer;
+        this.frameSource = frameSource;
+        this.endpointerConfig = endpointerConfig;
+        chunkSize = frameSource.getSampleRate() * CHUNK_MILLIS / 1000;
+    }
+
+    public static int getMinBufferSamples(final int sampleRate) {
+        return sampleRate * CHUNK_MILLIS / 1000 * 2;
+    }
+
+    public boolean startListening(final RecognitionListener listener) {
+        return startListening(null, null, listener);
+    }
+
+    // If not null, the recognizer is used instead of the default one just for this recognition,
+    // and must have been built for the sample rate of the frame source. If not null, the frame
+    // source is started only after previousFrameSourceUser (e.g. a stopping wake word detector
+    // thread) has finished, so that the caller does not need to wait for it.
+    public synchronized boolean startListening(@Nullable final Recognizer listeningRecognizer,
+                                               @Nullable final Thread previousFrameSourceUser,
+                                               final RecognitionListener listener) {
+        if (recognizerThread != null && recognizerThread.isAlive()) {
+            return false;
+        }
+
+        final long recognition = ++currentRecognition;
+        final Recognizer activeRecognizer =
+                listeningRecognizer == null ? recognizer : listeningRecognizer;
+        recognizerThread = new Thread(() -> {
+            if (previousFrameSourceUser != null) {
+                try {
+                    previousFrameSourceUser.join();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+            }
+            recognize(activeRecognizer, recognition, listener);
+        }, TAG);
+        recognizerThread.start();
+        return true;
+    }
+
+    // waits for the recognition to stop, without calling any more listener methods
+    public synchronized boolean stop() {
+        if (recognizerThread == null) {
+            return false;
+        }
+
+        ++currentRecognition;
+        try {
+            recognizerThread.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recognizerThread = null;
+        return true;
+    }
+
+    // stops the recognition and releases the default recognizer, which is owned by this service
+    public void shutdown() {
+        stop();
+        recognizer.close();
+    }
+
+
+    private void recognize(final Recognizer activeRecognizer,
+                           final long recognition,
+                           final RecognitionListener listener) {
+        final EnergyEndpointer endpointer = new EnergyEndpointer(frameSource.getSampleRate(),
+                endpointerConfig.endSilenceMillis, endpointerConfig.noSpeechTimeoutMillis,
+                endpointerConfig.maxSpeechMillis);
+        final ArrayDeque<short[]> preRoll = new ArrayDeque<>(PRE_ROLL_CHUNKS);
+        // the recognizer does not keep a reference to the audio it is fed, so one buffer is
+        // enough for all chunks, and only the ones kept for the pre-roll are copied
+        final short[] chunk = new short[chunkSize];
+
+        try {
+            frameSource.start();
+            while (currentRecognition == recognition) {
+                final int length = frameSource.read(chunk, chunk.length);
+                if (length < 0) {
+                    post(recognition, listener::onTimeout); // no more audio
+                    break;
+                }
+
+                final EnergyEndpointer.State previousState = endpointer.getState();
+                final EnergyEndpointer.State state = endpointer.accept(chunk, length);
+
+                if (state == EnergyEndpointer.State.NO_SPEECH_TIMEOUT) {
+                    post(recognition, listener::onTimeout);
+                    break;
+
+                } else if (state == EnergyEndpointer.State.WAITING_FOR_SPEECH) {
+                    // keep the last chunks, since speech is detected only after it has started
+                    // reusing the oldest pre-roll chunk when possible
+                    @Nullable final short[] oldest =
+                            preRoll.size() == PRE_ROLL_CHUNKS ? preRoll.removeFirst() : null;
+                    preRoll.addLast(copyOf(chunk, length, oldest));
+                    continue;
+                }
+
+                if (previousState == EnergyEndpointer.State.WAITING_FOR_SPEECH) {
+                    for (final short[] preRollChunk : preRoll) {
+                        activeRecognizer.acceptWaveForm(preRollChunk, preRollChunk.length);
+                    }
+                    preRoll.clear();
+                }
+
+                if (state == EnergyEndpointer.State.END_OF_SPEECH) {
+                    activeRecognizer.acceptWaveForm(chunk, length);
+                    final String result = activeRecognizer.getFinalResult();
+                    post(recognition, () -> listener.onResult(result));
+                    break;
+                } else if (activeRecognizer.acceptWaveForm(chunk, length)) {
+                    // Vosk's own endpointer found the end of the speech before ours
+                    final String result = activeRecognizer.getResult();
+                    post(recognition, () -> listener.onResult(result));
+                    break;
+                } else {
+                    final String partialResult = activeRecognizer.getPartialResult();
+                    post(recognition, () -> listener.onPartialResult(partialResult));
+                }
+            }
+
+            frameSource.stop();
+            if (currentRecognition != recognition) {
+                // discard anything left in the recognizer, so that it starts clean next time
+                activeRecognizer.getFinalResult();
+            }
+
+        } catch (final IOException | RuntimeException e) {
+            frameSource.stop();
+            post(recognition, () -> listener.onError(
+                    e.getCause() instanceof SpeechInputDevice.UnableToAccessMicrophoneException
+                            ? (Exception) e.getCause() : e));
+        }
+    }
+
+    // the runnable is dropped if the recognition is stale by the time it reaches the main thread
+    private void post(final long recognition, final Runnable runnable) {
+        mainHandler.post(() -> {
+            if (currentRecognition == recognition) {
+                runnable.run();
+            }
+        });
+    }
+
+    private static short[] copyOf(final short[] chunk,
+                                  final int length,
+                                  @Nullable final short[] reusable) {
+        final short[] copy =
+                reusable != null && reusable.length == length ? reusable : new short[length];
+        System.arraycopy(chunk, 0, copy, 0, length);
+        return copy;
+    }
+}
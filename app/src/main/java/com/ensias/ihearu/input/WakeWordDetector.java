@@ -0,0 +1,158 @@
+package com.ensias.ihearu.input;
+
+import org.vosk.Recognizer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+// Listens for a wake phrase using a Vosk recognizer restricted to a tiny grammar (just the wake
+// phrase and "[unk]"), which is much cheaper than full recognition. To keep the CPU mostly idle,
+// audio is read in long chunks and goes through an energy endpointer first: the recognizer only
+// decodes the audio around sounds louder than the background noise, and sleeps during silence.
+// Does not depend on Android classes, so that it can run on recorded audio in benchmarks.
+public final class WakeWordDetector {
+
+    private static final int CHUNK_MILLIS = 200;
+    private static final int PRE_ROLL_CHUNKS = 2;
+    // a wake phrase is short, so there is no need to wait for long after it
+    private static final int END_SILENCE_MILLIS = 400;
+    private static final int MAX_SPEECH_MILLIS = 4000;
+    // restart from time to time, to adapt to changes in the background noise
+    private static final int RESTART_MILLIS = 30000;
+
+    private final Recognizer grammarRecognizer;
+    private final String wakePhrase;
+    private final boolean alwaysDecode;
+    private volatile boolean stopped = false;
+
+    // statistics to measure how often the recognizer is actually used
+    private long processedSamples = 0;
+    private long decodedSamples = 0;
+
+
+    // the grammar recognizer should be built with buildGrammar(wakePhrase); alwaysDecode feeds all
+    // of the audio to the recognizer, and is useful only to compare performance
+    public WakeWordDetector(final Recognizer grammarRecognizer,
+                            final String wakePhrase,
+                            final boolean alwaysDecode) {
+        this.grammarRecognizer = grammarRecognizer;
+        this.wakePhrase = normalize(wakePhrase);
+        this.alwaysDecode = alwaysDecode;
+    }
+
+    public static String buildGrammar(final String wakePhrase) {
+        return "[\"" + normalize(wakePhrase).replace("\"", "") + "\", \"[unk]\"]";
+    }
+
+    // Blocks until the wake phrase is heard (returns true), or until the frame source has no more
+    // audio or stop() is called (returns false). Does not start or stop the frame source.
+    public boolean run(final FrameSource frameSource) throws IOException {
+        final int sampleRate = frameSource.getSampleRate();
+        final short[] chunk = new short[sampleRate * CHUNK_MILLIS / 1000];
+        final ArrayDeque<short[]> preRoll = new ArrayDeque<>(PRE_ROLL_CHUNKS);
+        final EnergyEndpointer endpointer = new EnergyEndpointer(sampleRate,
+                END_SILENCE_MILLIS, RESTART_MILLIS, MAX_SPEECH_MILLIS);
+
+        try {
+            while (!stopped) {
+                final int length = frameSource.read(chunk, chunk.length);
+                if (length < 0) {
+                    return false;
+                }
+                processedSamples += length;
+
+                final EnergyEndpointer.State previousState = endpointer.getState();
+                final EnergyEndpointer.State state = endpointer.accept(chunk, length);
+                if (alwaysDecode) {
+                    if (decode(chunk, length)) {
+                        return true;
+                    }
+                    if (state == EnergyEndpointer.State.END_OF_SPEECH
+                            || state == EnergyEndpointer.State.NO_SPEECH_TIMEOUT) {
+                        endpointer.reset();
+                    }
+                    continue;
+                }
+
+                switch (state) {
+                    case WAITING_FOR_SPEECH:
+                        // the recognizer is not used at all
+                        if (preRoll.size() == PRE_ROLL_CHUNKS) {
+                            preRoll.removeFirst();
+                        }
+                        final short[] preRollChunk = new short[length];
+                        System.arraycopy(chunk, 0, preRollChunk, 0, length);
+                        preRoll.addLast(preRollChunk);
+                        break;
+
+                    case SPEECH:
+                        if (previousState == EnergyEndpointer.State.WAITING_FOR_SPEECH) {
+                            for (final short[] preRollData : preRoll) {
+                                if (decode(preRollData, preRollData.length)) {
+                                    return true;
+                                }
+                            }
+                            preRoll.clear();
+                        }
+                        if (decode(chunk, length)) {
+                            return true;
+                        }
+                        break;
+
+                    case END_OF_SPEECH:
+                        if (decode(chunk, length) || matches(grammarRecognizer.getFinalResult())) {
+                            return true;
+                        }
+                        endpointer.reset();
+                        break;
+
+                    case NO_SPEECH_TIMEOUT:
+                        endpointer.reset();
+                        break;
+                }
+            }
+            return false;
+
+        } finally {
+            // make sure the recognizer starts clean the next time
+            grammarRecognizer.getFinalResult();
+        }
+    }
+
+    // can be called from any thread, even before run(), which then returns false after the
+    // current chunk; a stopped detector can not be run again
+    public void stop() {
+        stopped = true;
+    }
+
+    public long getProcessedSamples() {
+        return processedSamples;
+    }
+
+    public long getDecodedSamples() {
+        return decodedSamples;
+    }
+
+
+    private boolean decode(final short[] data, final int length) {
+        decodedSamples += length;
+        if (grammarRecognizer.acceptWaveForm(data, length)) {
+            return matches(grammarRecognizer.getResult());
+        } else {
+            return matches(grammarRecognizer.getPartialResult());
+        }
+    }
+
+    // Vosk results are small JSON objects like {"partial" : "[unk] hey computer"}, with a single
+    // field since the recognizer has no alternatives, so there is no need for a JSON parser
+    private boolean matches(final String result) {
+        final String text = result.substring(result.indexOf(':') + 1)
+                .replaceAll("[\"{}\\s]+", " ");
+        return (" " + text + " ").contains(" " + wakePhrase + " ");
+    }
+
+    private static String normalize(final String wakePhrase) {
+        return wakePhrase.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,132 @@
+package com.ensias.ihearu.input;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Reads 16-bit mono PCM samples from a WAV file, e.g. to benchmark recognition on recorded audio
+public final class WavFrameSource implements FrameSource {
+
+    private final DataInputStream inputStream;
+    private final int sampleRate;
+    private long remainingBytes;
+    private byte[] bytes = new byte[0];
+
+
+    public WavFrameSource(final File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public WavFrameSource(final InputStream wavInputStream) throws IOException {
+        inputStream = new DataInputStream(new BufferedInputStream(wavInputStream));
+        try {
+            if (readTag() != 0x52494646 /* RIFF */) {
+                throw new IOException("Not a RIFF file");
+            }
+            readLittleEndianInt(); // size of the whole file
+            if (readTag() != 0x57415645 /* WAVE */) {
+                throw new IOException("Not a WAVE file");
+            }
+
+            int readSampleRate = -1;
+            while (true) {
+                final int tag = readTag();
+                final long chunkSize = readLittleEndianInt() & 0xffffffffL;
+                if (tag == 0x666d7420 /* fmt  */) {
+                    final int format = readLittleEndianShort();
+                    final int channels = readLittleEndianShort();
+                    readSampleRate = readLittleEndianInt();
+                    readLittleEndianInt(); // byte rate
+                    readLittleEndianShort(); // block align
+                    final int bitsPerSample = readLittleEndianShort();
+                    if (format != 1 || channels != 1 || bitsPerSample != 16) {
+                        throw new IOException("Only 16-bit mono PCM is supported");
+                    }
+                    skipFully(chunkSize - 16);
+
+                } else if (tag == 0x64617461 /* data */) {
+                    if (readSampleRate == -1) {
+                        throw new IOException("Missing fmt chunk before data chunk");
+                    }
+                    sampleRate = readSampleRate;
+                    remainingBytes = chunkSize;
+                    return;
+
+                } else {
+                    skipFully(chunkSize + (chunkSize & 1)); // chunks are word aligned
+                }
+            }
+        } catch (final IOException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public int read(final short[] buffer, final int length) throws IOException {
+        final int byteCount = (int) Math.min(remainingBytes, length * 2L) & ~1;
+        if (byteCount == 0) {
+            return -1;
+        }
+        if (bytes.length < byteCount) {
+            bytes = new byte[byteCount];
+        }
+
+        inputStream.readFully(bytes, 0, byteCount);
+        remainingBytes -= byteCount;
+        for (int i = 0; i < byteCount / 2; ++i) {
+            buffer[i] = (short) ((bytes[2 * i] & 0xff) | (bytes[2 * i + 1] << 8));
+        }
+        return byteCount / 2;
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void release() {
+        try {
+            inputStream.close();
+        } catch (final IOException ignored) {
+            // nothing to do
+        }
+    }
+
+
+    private int readTag() throws IOException {
+        return inputStream.readInt(); // big endian, so that tags can be written as hex
+    }
+
+    private int readLittleEndianInt() throws IOException {
+        return Integer.reverseBytes(inputStream.readInt());
+    }
+
+    private int readLittleEndianShort() throws IOException {
+        return Short.reverseBytes(inputStream.readShort()) & 0xffff;
+    }
+
+    private void skipFully(final long byteCount) throws IOException {
+        long remaining = byteCount;
+        while (remaining > 0) {
+            final long skipped = inputStream.skip(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+}
@@ -25,6 +25,12 @@ public class IOFragment extends PreferenceFragmentCompat {
                     VoskInputDevice.deleteCurrentModel(requireContext());
                     return true;
                 });
+        findPreference(getString(R.string.pref_key_vosk_model_repository))
+                .setOnPreferenceChangeListener((preference, newValue) -> {
+                    // the model will be downloaded again from the new repository
+                    VoskInputDevice.deleteCurrentModel(requireContext());
+                    return true;
+                });
     }
 
     @Override
@@ -0,0 +1,11 @@
+package com.ensias.ihearu.skills;
+
+import org.dicio.skill.SkillContext;
+
+// Implemented by the skill infos of skills which can prepare in advance for being evaluated, e.g.
+// by connecting to a server, when the user is probably asking for them but is still talking (see
+// SpeculativeSkillMatcher). Called on a background thread, at most once per user input, and
+// maybe for nothing, so it should only do cheap or anyway useful work.
+public interface PrewarmableSkillInfo {
+    void prewarm(SkillContext context);
+}
@@ -95,14 +95,27 @@ public final class SkillHandler {
     }
 
 
+    // skills are taken from SkillPool when possible, call releaseSkills() when done with them
     public static List<Skill> getStandardSkillBatch() {
         return getEnabledSkillInfoList().stream()
-                .map(SkillHandler::buildSkillFromInfo)
+                .map(SkillHandler::acquireSkillFromInfo)
                 .collect(Collectors.toList());
     }
 
     public static Skill getFallbackSkill() {
-        return buildSkillFromInfo(Objects.requireNonNull(FALLBACK_SKILL_INFO_LIST.get(0)));
+        return acquireSkillFromInfo(Objects.requireNonNull(FALLBACK_SKILL_INFO_LIST.get(0)));
+    }
+
+    // the skills must have been obtained from the methods above, and must not be used anymore
+    public static void releaseSkills(final List<Skill> skills) {
+        for (final Skill skill : skills) {
+            SkillPool.release(skill);
+        }
+    }
+
+    private static Skill acquireSkillFromInfo(@NonNull final SkillInfo skillInfo) {
+        return SkillPool.acquire(skillInfo, Sections.getCurrentLocale(),
+                () -> buildSkillFromInfo(skillInfo));
     }
 
     private static Skill buildSkillFromInfo(@NonNull final SkillInfo skillInfo) {
@@ -0,0 +1,104 @@
+package com.ensias.ihearu.skills;
+
+import androidx.annotation.Nullable;
+
+import org.dicio.skill.Skill;
+import org.dicio.skill.SkillInfo;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+// Keeps the skills built from skill infos once they are not used anymore (e.g. when the activity
+// is recreated and a new skill evaluator is built), so that they can be handed out again instead
+// of building new recognizers, processors and outputs. Skills are cached by skill info and locale,
+// since the recognizers depend on the sections of the locale. A skill is handed out to a single
+// user at a time, since skills keep the state of the input being evaluated.
+final class SkillPool {
+
+    // enough for all of the rankers (the main one and the ones used in parallel)
+    private static final int MAX_IDLE_SKILLS_PER_KEY = 8;
+
+    private static final class Key {
+        private final String skillInfoId;
+        private final Locale locale;
+
+        Key(final String skillInfoId, final Locale locale) {
+            this.skillInfoId = skillInfoId;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return skillInfoId.equals(other.skillInfoId) && locale.equals(other.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(skillInfoId, locale);
+        }
+    }
+
+    private static final Map<Key, ArrayDeque<Skill>> IDLE_SKILLS = new HashMap<>();
+    // the key of every skill handed out, so that it can be put back in the right place; weak,
+    // since skills which are never released should not be kept alive
+    private static final Map<Skill, Key> HANDED_OUT_KEYS = new WeakHashMap<>();
+    @Nullable private static Locale currentLocale = null;
+
+    private SkillPool() {
+    }
+
+
+    // Returns an idle skill built from the skill info for the locale, or one built by the builder.
+    // Building can be slow, so it happens outside of the lock, not to block threads which are
+    // acquiring or releasing other skills (e.g. the speculative skill matcher) in the meantime.
+    static Skill acquire(final SkillInfo skillInfo,
+                         final Locale locale,
+                         final Supplier<Skill> builder) {
+        final Key key = new Key(skillInfo.getId(), locale);
+        synchronized (SkillPool.class) {
+            if (!locale.equals(currentLocale)) {
+                // skills built for other locales would recognize the wrong language anyway
+                IDLE_SKILLS.clear();
+                currentLocale = locale;
+            }
+
+            @Nullable final ArrayDeque<Skill> idleSkills = IDLE_SKILLS.get(key);
+            if (idleSkills != null && !idleSkills.isEmpty()) {
+                final Skill skill = idleSkills.removeLast();
+                HANDED_OUT_KEYS.put(skill, key);
+                return skill;
+            }
+        }
+
+        final Skill skill = builder.get();
+        synchronized (SkillPool.class) {
+            HANDED_OUT_KEYS.put(skill, key);
+        }
+        return skill;
+    }
+
+    // the skill must not be used anymore by whoever acquired it
+    static synchronized void release(final Skill skill) {
+        @Nullable final Key key = HANDED_OUT_KEYS.remove(skill);
+        if (key == null || !key.locale.equals(currentLocale)) {
+            return; // not from this pool, or built for another locale
+        }
+
+        // reset the input that might have been set, so the skill is like a newly built one
+        skill.cleanup();
+        final ArrayDeque<Skill> idleSkills
+                = IDLE_SKILLS.computeIfAbsent(key, k -> new ArrayDeque<>());
+        if (idleSkills.size() < MAX_IDLE_SKILLS_PER_KEY) {
+            idleSkills.addLast(skill);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.ensias.ihearu.skills.open;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.util.StringUtils;
+import com.ensias.ihearu.util.TrigramIndex;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+// Index of the launcher apps installed on the device, with their labels already cleaned for
+// StringUtils.customStringDistanceOfCleaned(). Querying the package manager requires many binder
+// calls for every app, so this is done only once in the background (see App.onCreate) and then
+// updated only for the packages that are installed, changed or removed.
+public final class InstalledAppsIndex {
+
+    public static final String TAG = InstalledAppsIndex.class.getSimpleName();
+
+    public static class AppEntry {
+        public final String packageName;
+        public final CharSequence label;
+        public final String cleanLabel;
+
+        AppEntry(final String packageName, final CharSequence label) {
+            this.packageName = packageName;
+            this.label = label;
+            this.cleanLabel = StringUtils.cleanStringForDistance(label.toString());
+        }
+    }
+
+    @SuppressLint("StaticFieldLeak") // only the application context is stored
+    @Nullable private static InstalledAppsIndex instance = null;
+
+    private final Context context;
+    // guarded by this, a new snapshot is created every time it changes; kept in query order, so
+    // that among equally similar apps the first one returned by the package manager is chosen
+    private final Map<String, AppEntry> appsByPackage = new LinkedHashMap<>();
+    // null until the index is built for the first time
+    @Nullable private volatile TrigramIndex<AppEntry> snapshot = null;
+
+
+    private InstalledAppsIndex(final Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized InstalledAppsIndex getInstance(final Context context) {
+        if (instance == null) {
+            instance = new InstalledAppsIndex(context);
+        }
+        return instance;
+    }
+
+    // starts building the index in the background and keeps it up to date with package changes
+    public void startIndexing() {
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(final Context receiverContext, final Intent intent) {
+                onPackageBroadcast(intent);
+            }
+        }, filter);
+
+        runInBackground(this::getSnapshot);
+    }
+
+    // builds the index right away if it was not built yet, e.g. when an app is probably about to
+    // be opened, so that there is no need to wait for it later
+    public void ensureIndexed() {
+        getSnapshot();
+    }
+
+    @NonNull
+    public List<AppEntry> getApps() {
+        return getSnapshot().getItems();
+    }
+
+    // returns at most maxCandidates apps whose cleaned label is similar to the cleaned name, the
+    // most similar first, so that a slower string distance can be used to choose between them
+    @NonNull
+    public List<AppEntry> getSimilarApps(final String cleanName, final int maxCandidates) {
+        return getSnapshot().getCandidates(cleanName, maxCandidates);
+    }
+
+
+    // builds the index synchronously if the background build did not finish yet
+    @NonNull
+    private TrigramIndex<AppEntry> getSnapshot() {
+        @Nullable final TrigramIndex<AppEntry> currentSnapshot = snapshot;
+        if (currentSnapshot != null) {
+            return currentSnapshot;
+        }
+
+        synchronized (this) {
+            if (snapshot == null) {
+                for (final ResolveInfo resolveInfo : queryLauncherActivities(null)) {
+                    addEntry(resolveInfo);
+                }
+                updateSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+
+    private void onPackageBroadcast(final Intent intent) {
+        @Nullable final Uri data = intent.getData();
+        if (data == null || data.getSchemeSpecificPart() == null) {
+            return;
+        }
+        final String packageName = data.getSchemeSpecificPart();
+
+        if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                && !intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+            runInBackground(() -> removePackage(packageName));
+        } else if (!Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())) {
+            // when a package is replaced, it is then also added, so it is updated here
+            runInBackground(() -> updatePackage(packageName));
+        }
+    }
+
+    private synchronized void removePackage(final String packageName) {
+        if (snapshot != null && appsByPackage.remove(packageName) != null) {
+            updateSnapshot();
+        }
+    }
+
+    private synchronized void updatePackage(final String packageName) {
+        if (snapshot == null) {
+            return; // the package will be indexed when the index is first built
+        }
+
+        // the package may not have launcher activities anymore, e.g. if it was disabled
+        appsByPackage.remove(packageName);
+        for (final ResolveInfo resolveInfo : queryLauncherActivities(packageName)) {
+            addEntry(resolveInfo);
+        }
+        updateSnapshot();
+    }
+
+    private void addEntry(final ResolveInfo resolveInfo) {
+        // the application info is already provided by queryIntentActivities, and apps with many
+        // launcher activities are matched only by their application label anyway
+        final String packageName = resolveInfo.activityInfo.packageName;
+        if (!appsByPackage.containsKey(packageName)) {
+            appsByPackage.put(packageName, new AppEntry(packageName, context.getPackageManager()
+                    .getApplicationLabel(resolveInfo.activityInfo.applicationInfo)));
+        }
+    }
+
+    private void updateSnapshot() {
+        snapshot = new TrigramIndex<>(new ArrayList<>(appsByPackage.values()),
+                app -> app.cleanLabel);
+    }
+
+    private List<ResolveInfo> queryLauncherActivities(@Nullable final String packageName) {
+        final Intent resolveInfosIntent = new Intent(Intent.ACTION_MAIN, null);
+        resolveInfosIntent.addCategory(Intent.CATEGORY_LAUNCHER);
+        resolveInfosIntent.setPackage(packageName);
+        @SuppressLint("QueryPermissionsNeeded") // we need to query all apps
+        final List<ResolveInfo> resolveInfos = context.getPackageManager()
+                .queryIntentActivities(resolveInfosIntent, 0);
+        return resolveInfos;
+    }
+
+    private static void runInBackground(final Runnable runnable) {
+        //noinspection ResultOfMethodCallIgnored
+        Completable.fromRunnable(runnable)
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> { }, throwable ->
+                        Log.e(TAG, "Could not update the installed apps index", throwable));
+    }
+}
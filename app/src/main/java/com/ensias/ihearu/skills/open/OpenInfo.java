@@ -8,13 +8,14 @@ import androidx.annotation.Nullable;
 import androidx.preference.PreferenceFragmentCompat;
 
 import com.ensias.ihearu.R;
+import com.ensias.ihearu.skills.PrewarmableSkillInfo;
 import org.dicio.skill.Skill;
 import org.dicio.skill.SkillContext;
 import org.dicio.skill.SkillInfo;
 import org.dicio.skill.chain.ChainSkill;
 import org.dicio.skill.standard.StandardRecognizer;
 
-public class OpenInfo extends SkillInfo {
+public class OpenInfo extends SkillInfo implements PrewarmableSkillInfo {
 
     public OpenInfo() {
         super("open", R.string.skill_name_open, R.string.skill_sentence_example_open,
@@ -33,6 +34,12 @@ public class OpenInfo extends SkillInfo {
                 .output(new OpenOutput());
     }
 
+    @Override
+    public void prewarm(final SkillContext context) {
+        // the index is usually already built in the background when the app starts
+        InstalledAppsIndex.getInstance(context.android()).ensureIndexed();
+    }
+
     @Nullable
     @Override
     public PreferenceFragmentCompat getPreferenceFragment() {
@@ -2,11 +2,7 @@ package com.ensias.ihearu.skills.open;
 
 import static com.ensias.ihearu.Sentences_en.open;
 
-import android.annotation.SuppressLint;
 import android.content.Intent;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 
 import androidx.annotation.Nullable;
 
@@ -15,28 +11,28 @@ import com.ensias.ihearu.util.StringUtils;
 import org.dicio.skill.chain.OutputGenerator;
 import org.dicio.skill.standard.StandardResult;
 
-import java.util.List;
-
 public class OpenOutput extends OutputGenerator<StandardResult> {
 
+    // how many apps with a label similar to the requested name to compare more accurately
+    private static final int MAX_CANDIDATE_APPS = 16;
+
     @Override
     public void generate(final StandardResult data) {
 
         final String userAppName = data.getCapturingGroup(open.what).trim();
-        final PackageManager packageManager = ctx().android().getPackageManager();
-        final ApplicationInfo applicationInfo = getMostSimilarApp(packageManager, userAppName);
+        final InstalledAppsIndex.AppEntry app = getMostSimilarApp(
+                InstalledAppsIndex.getInstance(ctx().android()), userAppName);
 
-        if (applicationInfo == null) {
+        if (app == null) {
             ctx().getSpeechOutputDevice().speak(ctx().android().getString(
                     R.string.skill_open_unknown_app, userAppName));
 
         } else {
             ctx().getSpeechOutputDevice().speak(ctx().android().getString(
-                    R.string.skill_open_opening,
-                    packageManager.getApplicationLabel(applicationInfo)));
+                    R.string.skill_open_opening, app.label));
 
-            final Intent launchIntent =
-                    packageManager.getLaunchIntentForPackage(applicationInfo.packageName);
+            final Intent launchIntent = ctx().android().getPackageManager()
+                    .getLaunchIntentForPackage(app.packageName);
             launchIntent.setAction(Intent.ACTION_MAIN);
             launchIntent.addCategory(Intent.CATEGORY_LAUNCHER);
             launchIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
@@ -45,35 +41,26 @@ public class OpenOutput extends OutputGenerator<StandardResult> {
     }
 
     @Nullable
-    private static ApplicationInfo getMostSimilarApp(final PackageManager packageManager,
-                                                     final String appName) {
-        final Intent resolveInfosIntent = new Intent(Intent.ACTION_MAIN, null);
-        resolveInfosIntent.addCategory(Intent.CATEGORY_LAUNCHER);
-        @SuppressLint("QueryPermissionsNeeded") // we need to query all apps
-        final List<ResolveInfo> resolveInfos =
-                packageManager.queryIntentActivities(resolveInfosIntent, 0);
-
+    private static InstalledAppsIndex.AppEntry getMostSimilarApp(
+            final InstalledAppsIndex installedAppsIndex, final String appName) {
+        // the app name is the same for all comparisons, so clean it only once
+        final String cleanAppName = StringUtils.cleanStringForDistance(appName);
         int bestDistance = Integer.MAX_VALUE;
-        ApplicationInfo bestApplicationInfo = null;
-        for (final ResolveInfo resolveInfo : resolveInfos) {
-            try {
-                final ApplicationInfo currentApplicationInfo = packageManager.getApplicationInfo(
-                        resolveInfo.activityInfo.packageName, PackageManager.GET_META_DATA);
-
-                final int currentDistance = StringUtils.customStringDistance(appName,
-                        packageManager.getApplicationLabel(currentApplicationInfo).toString());
-                if (currentDistance < bestDistance) {
-                    bestDistance = currentDistance;
-                    bestApplicationInfo = currentApplicationInfo;
-                }
-            } catch (final PackageManager.NameNotFoundException ignored) {
+        InstalledAppsIndex.AppEntry bestApp = null;
+        for (final InstalledAppsIndex.AppEntry app
+                : installedAppsIndex.getSimilarApps(cleanAppName, MAX_CANDIDATE_APPS)) {
+            final int currentDistance
+                    = StringUtils.customStringDistanceOfCleaned(cleanAppName, app.cleanLabel);
+            if (currentDistance < bestDistance) {
+                bestDistance = currentDistance;
+                bestApp = app;
             }
         }
 
         if (bestDistance > 5) {
             return null;
         }
-        return bestApplicationInfo;
+        return bestApp;
     }
 
     @Override
@@ -2,27 +2,33 @@ package com.ensias.ihearu.skills.search;
 
 import static com.ensias.ihearu.Sentences_en.search;
 
-import androidx.core.os.LocaleListCompat;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
 
 import com.ensias.ihearu.util.ConnectionUtils;
 import com.ensias.ihearu.util.LocaleUtils;
 import com.ensias.ihearu.util.StringUtils;
 import org.dicio.skill.chain.IntermediateProcessor;
 import org.dicio.skill.standard.StandardResult;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
 public class DuckDuckGoProcessor
         extends IntermediateProcessor<StandardResult, List<SearchOutput.Data>> {
 
+    public static final String TAG = DuckDuckGoProcessor.class.getSimpleName();
+
     private static final String DUCK_DUCK_GO_SEARCH_URL = "https://duckduckgo.com/html/?q=";
+    // the rest of the page is not downloaded once this many results are found
+    private static final int MAX_RESULTS = 10;
 
     private static final List<String> SUPPORTED_LOCALES = Arrays.asList("ar-es", "au-en", "at-de",
             "be-fr", "be-nl", "br-pt", "bg-bg", "ca-en", "ca-fr", "ct-ca", "cl-es", "cn-zh",
@@ -33,8 +39,20 @@ public class DuckDuckGoProcessor
             "za-en", "es-ca", "es-es", "se-sv", "ch-de", "ch-fr", "tw-tz", "th-en", "tr-tr",
             "us-en", "us-es", "ua-uk", "uk-en", "vn-en");
 
+    // notified about results as soon as they are extracted, before the whole page is downloaded
+    @Nullable private final SearchOutput streamingOutput;
+
+
+    public DuckDuckGoProcessor(@Nullable final SearchOutput streamingOutput) {
+        this.streamingOutput = streamingOutput;
+    }
+
+
+    // to be called when a search is probably about to be made
+    public static void preconnect() {
+        ConnectionUtils.preconnect(DUCK_DUCK_GO_SEARCH_URL);
+    }
 
-    @SuppressWarnings("ConstantConditions") // NullPointerExceptions are handled
     @Override
     public List<SearchOutput.Data> process(final StandardResult data)
             throws Exception {
@@ -51,40 +69,55 @@ public class DuckDuckGoProcessor
         LocaleUtils.LocaleResolutionResult resolvedLocale = null;
         try {
             resolvedLocale = LocaleUtils.resolveSupportedLocale(
-                    LocaleListCompat.create(ctx().getLocale()), SUPPORTED_LOCALES);
+                    Collections.singletonList(ctx().getLocale()), SUPPORTED_LOCALES);
         } catch (final LocaleUtils.UnsupportedLocaleException ignored) {
         }
         final String locale = resolvedLocale == null ? "" : resolvedLocale.supportedLocaleString;
 
-        // make request using headers
-        final String html = ConnectionUtils.getPage(
-                DUCK_DUCK_GO_SEARCH_URL + ConnectionUtils.urlEncode(queryToSearch),
+        if (streamingOutput != null) {
+            streamingOutput.onSearchStarted();
+        }
+
+        final String url = DUCK_DUCK_GO_SEARCH_URL + ConnectionUtils.urlEncode(queryToSearch);
+        final SearchResultsCache cache = SearchResultsCache.getInstance(ctx().android());
+        final String cacheKey = SearchResultsCache.buildKey(queryToSearch, locale);
+        @Nullable final SearchResultsCache.Entry cachedEntry = cache.get(cacheKey);
+        if (cachedEntry != null) {
+            if (!cachedEntry.isFresh()) {
+                // serve the old results right away, but update them for the next time
+                //noinspection ResultOfMethodCallIgnored
+                Completable.fromAction(() -> search(url, locale, cache, cacheKey, null))
+                        .subscribeOn(Schedulers.io())
+                        .subscribe(() -> { }, throwable ->
+                                Log.w(TAG, "Could not revalidate search results", throwable));
+            }
+            return cachedEntry.results;
+        }
+
+        return search(url, locale, cache, cacheKey, streamingOutput);
+    }
+
+    private static List<SearchOutput.Data> search(
+            final String url,
+            final String locale,
+            final SearchResultsCache cache,
+            final String cacheKey,
+            @Nullable final DuckDuckGoResultScanner.ResultListener resultListener)
+            throws IOException {
+        // make request using headers, reading results while the page is being downloaded
+        final List<SearchOutput.Data> results = ConnectionUtils.readPage(url,
                 new HashMap<String, String>() {{
                     put("User-Agent",
                             "Mozilla/5.0 (X11; Linux x86_64; rv:95.0) Gecko/20100101 Firefox/95.0");
                     put("Cookie", "kl=" + locale);
-                }}
+                }},
+                ConnectionUtils.DEFAULT_DEADLINE_MILLIS,
+                new DuckDuckGoResultScanner(MAX_RESULTS, resultListener)
         );
-        final Document document = Jsoup.parse(html);
-        final Elements elements = document.select("div[class=links_main links_deep result__body]");
-
-        final List<SearchOutput.Data> result = new ArrayList<>();
-        for (final Element element : elements) {
-            try {
-                final SearchOutput.Data searchResult = new SearchOutput.Data();
-
-                searchResult.title = element.select("a[class=result__a]").first().html();
-                searchResult.thumbnailUrl = "https:"
-                        + element.select("img[class=result__icon__img]").first().attr("src");
-                searchResult.url = ConnectionUtils.urlDecode(
-                        element.select("a[class=result__a]").first().attr("href"));
-                searchResult.description
-                        = element.select("a[class=result__snippet]").first().html();
-
-                result.add(searchResult);
-            } catch (final NullPointerException ignored) {
-            }
+
+        if (!results.isEmpty()) {
+            cache.put(cacheKey, results);
         }
-        return result;
+        return results;
     }
 }
@@ -0,0 +1,126 @@
+package com.ensias.ihearu.skills.search;
+
+import androidx.annotation.Nullable;
+
+import com.ensias.ihearu.util.ConnectionUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Extracts search results from a DuckDuckGo html page while it is still being downloaded, without
+// building the DOM of the whole page. The page is scanned for the divs containing each result,
+// and only the html of a single result at a time is parsed with Jsoup. Scanning stops as soon as
+// enough results are found, so the rest of the page is not even downloaded.
+public class DuckDuckGoResultScanner
+        implements ConnectionUtils.BodyReader<List<SearchOutput.Data>> {
+
+    public interface ResultListener {
+        // called on the thread reading the page, as soon as each result is extracted
+        void onResult(SearchOutput.Data result);
+    }
+
+    private static final String RESULT_MARKER = "class=\"links_main links_deep result__body\"";
+    private static final String DIV_START = "<div";
+    // how many chars to keep before the marker when discarding the page before the first result,
+    // enough to contain the start of the div tag the marker is in
+    private static final int KEPT_CHARS_BEFORE_MARKER = 256;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int maxResults;
+    @Nullable private final ResultListener resultListener;
+    private final List<SearchOutput.Data> results = new ArrayList<>();
+
+
+    public DuckDuckGoResultScanner(final int maxResults,
+                                   @Nullable final ResultListener resultListener) {
+        this.maxResults = maxResults;
+        this.resultListener = resultListener;
+    }
+
+    @Override
+    public List<SearchOutput.Data> read(final Reader reader) throws IOException {
+        final char[] chunk = new char[CHUNK_SIZE];
+        // contains the part of the page starting from the current result, if any
+        final StringBuilder buffer = new StringBuilder();
+        boolean insideResult = false;
+        int searchFrom = 0;
+
+        int readChars;
+        while ((readChars = reader.read(chunk)) != -1) {
+            buffer.append(chunk, 0, readChars);
+
+            int markerIndex;
+            while ((markerIndex = buffer.indexOf(RESULT_MARKER, searchFrom)) != -1) {
+                int resultStart = buffer.lastIndexOf(DIV_START, markerIndex);
+                if (resultStart == -1) {
+                    resultStart = markerIndex;
+                }
+
+                if (insideResult) {
+                    // the previous result ends where the next one starts
+                    onResultHtml(buffer.substring(0, resultStart));
+                    if (results.size() >= maxResults) {
+                        return results;
+                    }
+                }
+
+                buffer.delete(0, resultStart);
+                insideResult = true;
+                searchFrom = markerIndex - resultStart + RESULT_MARKER.length();
+            }
+
+            if (insideResult) {
+                // the marker may be split between this chunk and the next one
+                searchFrom = Math.max(searchFrom, buffer.length() - RESULT_MARKER.length() + 1);
+            } else {
+                // nothing before the first result is needed
+                if (buffer.length() > KEPT_CHARS_BEFORE_MARKER) {
+                    buffer.delete(0, buffer.length() - KEPT_CHARS_BEFORE_MARKER);
+                }
+                searchFrom = Math.max(0, buffer.length() - RESULT_MARKER.length() + 1);
+            }
+        }
+
+        if (insideResult) {
+            // the last result goes on until the end of the page
+            onResultHtml(buffer.toString());
+        }
+        return results;
+    }
+
+    private void onResultHtml(final String html) {
+        @Nullable final SearchOutput.Data result = parseResult(html);
+        if (result != null) {
+            results.add(result);
+            if (resultListener != null) {
+                resultListener.onResult(result);
+            }
+        }
+    }
+
+    @Nullable
+    private static SearchOutput.Data parseResult(final String html) {
+        final Element element = Jsoup.parseBodyFragment(html).body();
+        @Nullable final Element link = element.selectFirst("a[class=result__a]");
+        @Nullable final Element icon = element.selectFirst("img[class=result__icon__img]");
+        @Nullable final Element snippet = element.selectFirst("a[class=result__snippet]");
+        if (link == null || icon == null || snippet == null) {
+            return null; // not a valid result
+        }
+
+        final SearchOutput.Data result = new SearchOutput.Data();
+        result.title = link.html();
+        result.thumbnailUrl = "https:" + icon.attr("src");
+        try {
+            result.url = ConnectionUtils.urlDecode(link.attr("href"));
+        } catch (final IOException | IllegalArgumentException e) {
+            return null;
+        }
+        result.description = snippet.html();
+        return result;
+    }
+}
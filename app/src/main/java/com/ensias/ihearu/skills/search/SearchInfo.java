@@ -10,13 +10,13 @@ import androidx.annotation.Nullable;
 import androidx.preference.PreferenceFragmentCompat;
 
 import com.ensias.ihearu.R;
+import com.ensias.ihearu.skills.PrewarmableSkillInfo;
 import org.dicio.skill.Skill;
 import org.dicio.skill.SkillContext;
 import org.dicio.skill.SkillInfo;
-import org.dicio.skill.chain.ChainSkill;
 import org.dicio.skill.standard.StandardRecognizer;
 
-public class SearchInfo extends SkillInfo {
+public class SearchInfo extends SkillInfo implements PrewarmableSkillInfo {
 
     public SearchInfo() {
         super("search", R.string.skill_name_search, R.string.skill_sentence_example_search,
@@ -30,9 +30,6 @@ public class SearchInfo extends SkillInfo {
 
     @Override
     public Skill build(final SkillContext context) {
-        final ChainSkill.Builder builder = new ChainSkill.Builder()
-                .recognize(new StandardRecognizer(getSection(search)));
-
         // Qwant was once available as a second search engine; restore this if adding a new engine
         /*final String searchEngine = context.getPreferences().getString(
                 ctx().android().getString(R.string.pref_key_search_engine), "");
@@ -40,9 +37,13 @@ public class SearchInfo extends SkillInfo {
                 .getString(R.string.pref_val_search_engine_duckduckgo))) {
         }*/
 
-        builder.process(new DuckDuckGoProcessor());
+        return SearchOutput.buildSkill(new StandardRecognizer(getSection(search)));
+    }
 
-        return builder.output(new SearchOutput());
+    @Override
+    public void prewarm(final SkillContext context) {
+        // search results are cached, but most queries are new, so connect to the search engine
+        DuckDuckGoProcessor.preconnect();
     }
 
     @Nullable
@@ -5,16 +5,15 @@ import static com.ensias.ihearu.util.ShareUtils.openUrlInBrowser;
 
 import android.text.Html;
 import android.view.View;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.annotation.Nullable;
 import androidx.core.content.res.ResourcesCompat;
 
-import com.squareup.picasso.Picasso;
-
 import com.ensias.ihearu.R;
 import com.ensias.ihearu.SectionsGenerated;
+import com.ensias.ihearu.eval.SkillGrammar;
 import com.ensias.ihearu.output.graphical.GraphicalOutputUtils;
 import org.dicio.skill.Skill;
 import org.dicio.skill.chain.ChainSkill;
@@ -23,11 +22,15 @@ import org.dicio.skill.chain.OutputGenerator;
 import org.dicio.skill.standard.StandardRecognizer;
 import org.dicio.skill.standard.StandardResult;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
-public class SearchOutput extends OutputGenerator<List<SearchOutput.Data>> {
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+
+public class SearchOutput extends OutputGenerator<List<SearchOutput.Data>>
+        implements DuckDuckGoResultScanner.ResultListener {
 
     public static class Data {
         public String title;
@@ -37,7 +40,38 @@ public class SearchOutput extends OutputGenerator<List<SearchOutput.Data>> {
     }
 
     private boolean tryAgain = false;
+    // built the first time they are needed, and shared with the follow-up skills themselves, so
+    // that asking again and again does not build new skills every time
+    @Nullable private List<Skill> followUpSkills = null;
+    // the outputs of the follow-up skills, whose search state is reset along with this one's
+    @Nullable private List<SearchOutput> followUpOutputs = null;
+
+    // results extracted by the processor so far, added from the processor's thread
+    private final List<Data> extractedResults = Collections.synchronizedList(new ArrayList<>());
+    // only used on the main thread, reset at the start of every search
+    @Nullable private LinearLayout resultsLayout = null;
+    private int displayedResultCount = 0;
+
+
+    // Results are displayed as soon as the processor extracts them, and not only once all of
+    // them are available in generate(). Called from the processor's thread.
+    void onSearchStarted() {
+        extractedResults.clear();
+        AndroidSchedulers.mainThread().scheduleDirect(() -> {
+            resultsLayout = null;
+            displayedResultCount = 0;
+        });
+    }
 
+    // called from the processor's thread
+    @Override
+    public void onResult(final Data result) {
+        // start downloading the icon right away, it is needed below
+        SearchThumbnails.getInstance(ctx().android()).prefetch(result);
+        extractedResults.add(result);
+        // the same scheduler used to call generate(), so that this runs before it
+        AndroidSchedulers.mainThread().scheduleDirect(() -> displayNewResults(extractedResults));
+    }
 
     @Override
     public void generate(final List<Data> data) {
@@ -55,28 +89,62 @@ public class SearchOutput extends OutputGenerator<List<SearchOutput.Data>> {
         }
         tryAgain = false;
 
-        final LinearLayout output
-                = GraphicalOutputUtils.buildVerticalLinearLayout(ctx().android(),
-                ResourcesCompat.getDrawable(ctx().android().getResources(),
-                        R.drawable.divider_items, null));
-        for (final Data item : data) {
-            final View view = GraphicalOutputUtils.inflate(ctx().android(),
-                    R.layout.skill_search_result);
-
-            ((TextView) view.findViewById(R.id.title))
-                    .setText(Html.fromHtml(item.title));
-            Picasso.get()
-                    .load(item.thumbnailUrl).into((ImageView) view.findViewById(R.id.thumbnail));
-            ((TextView) view.findViewById(R.id.description))
-                    .setText(Html.fromHtml(item.description));
-
-            view.setOnClickListener(v -> openUrlInBrowser(ctx().android(), item.url));
-            output.addView(view);
+        // usually all of the results have already been displayed while they were extracted
+        displayNewResults(data);
+    }
+
+    private void displayNewResults(final List<Data> results) {
+        final List<Data> resultsSnapshot;
+        synchronized (extractedResults) {
+            resultsSnapshot = new ArrayList<>(results);
+        }
+        if (displayedResultCount >= resultsSnapshot.size()) {
+            return;
         }
 
-        ctx().getSpeechOutputDevice().speak(ctx().android().getString(
-                R.string.skill_search_here_is_what_i_found));
-        ctx().getGraphicalOutputDevice().display(output);
+        if (resultsLayout == null) {
+            // first result: start speaking and display the list, which is then filled in
+            resultsLayout = GraphicalOutputUtils.buildVerticalLinearLayout(ctx().android(),
+                    ResourcesCompat.getDrawable(ctx().android().getResources(),
+                            R.drawable.divider_items, null));
+            ctx().getSpeechOutputDevice().speak(ctx().android().getString(
+                    R.string.skill_search_here_is_what_i_found));
+            ctx().getGraphicalOutputDevice().display(resultsLayout);
+        }
+
+        for (final Data item : resultsSnapshot.subList(displayedResultCount,
+                resultsSnapshot.size())) {
+            resultsLayout.addView(buildResultView(item));
+        }
+        displayedResultCount = resultsSnapshot.size();
+    }
+
+    private View buildResultView(final Data item) {
+        final View view = GraphicalOutputUtils.inflate(ctx().android(),
+                R.layout.skill_search_result);
+
+        ((TextView) view.findViewById(R.id.title))
+                .setText(Html.fromHtml(item.title));
+        SearchThumbnails.getInstance(ctx().android())
+                .loadInto(item, view.findViewById(R.id.thumbnail));
+        ((TextView) view.findViewById(R.id.description))
+                .setText(Html.fromHtml(item.description));
+
+        view.setOnClickListener(v -> openUrlInBrowser(ctx().android(), item.url));
+        return view;
+    }
+
+    // the processor needs to notify the output of the same skill about results
+    static Skill buildSkill(final InputRecognizer<StandardResult> recognizer) {
+        return buildSkill(recognizer, new SearchOutput());
+    }
+
+    private static Skill buildSkill(final InputRecognizer<StandardResult> recognizer,
+                                    final SearchOutput output) {
+        return new ChainSkill.Builder()
+                .recognize(recognizer)
+                .process(new DuckDuckGoProcessor(output))
+                .output(output);
     }
 
     @Override
@@ -85,51 +153,77 @@ public class SearchOutput extends OutputGenerator<List<SearchOutput.Data>> {
             return Collections.emptyList();
         }
 
-        return Arrays.asList(
-                new ChainSkill.Builder()
-                        .recognize(new StandardRecognizer(getSection(SectionsGenerated.search)))
-                        .process(new DuckDuckGoProcessor())
-                        .output(new SearchOutput()),
-                new ChainSkill.Builder()
-                        .recognize(new InputRecognizer<StandardResult>() {
-                            private String input;
-
-                            @Override
-                            public Specificity specificity() {
-                                return Specificity.low;
-                            }
-
-                            @Override
-                            public void setInput(final String input,
-                                                 final List<String> inputWords,
-                                                 final List<String> normalizedInputWords) {
-                                this.input = input;
-                            }
-
-                            @Override
-                            public float score() {
-                                return 1.0f;
-                            }
-
-                            @Override
-                            public StandardResult getResult() {
-                                return new StandardResult("", input, null) {
-                                    @Override
-                                    public String getCapturingGroup(final String name) {
-                                        return input;
-                                    }
-                                };
-                            }
-
-                            @Override
-                            public void cleanup() {
-                            }
-                        })
-                        .process(new DuckDuckGoProcessor())
-                        .output(new SearchOutput()));
+        if (followUpSkills == null) {
+            final SearchOutput searchAgainOutput = new SearchOutput();
+            final SearchOutput anyInputOutput = new SearchOutput();
+            followUpSkills = Arrays.asList(
+                    SkillGrammar.withSection(buildSkill(
+                            new StandardRecognizer(getSection(SectionsGenerated.search)),
+                            searchAgainOutput), SectionsGenerated.search),
+                    buildSkill(new AnyInputRecognizer(), anyInputOutput));
+            followUpOutputs = Arrays.asList(searchAgainOutput, anyInputOutput);
+            searchAgainOutput.followUpSkills = followUpSkills;
+            searchAgainOutput.followUpOutputs = followUpOutputs;
+            anyInputOutput.followUpSkills = followUpSkills;
+            anyInputOutput.followUpOutputs = followUpOutputs;
+        }
+        return followUpSkills;
+    }
+
+    // matches anything the user says, which is then searched as it is
+    private static class AnyInputRecognizer extends InputRecognizer<StandardResult> {
+        private String input;
+
+        @Override
+        public Specificity specificity() {
+            return Specificity.low;
+        }
+
+        @Override
+        public void setInput(final String input,
+                             final List<String> inputWords,
+                             final List<String> normalizedInputWords) {
+            this.input = input;
+        }
+
+        @Override
+        public float score() {
+            return 1.0f;
+        }
+
+        @Override
+        public StandardResult getResult() {
+            final String capturedInput = input;
+            return new StandardResult("", capturedInput, null) {
+                @Override
+                public String getCapturingGroup(final String name) {
+                    return capturedInput;
+                }
+            };
+        }
+
+        @Override
+        public void cleanup() {
+        }
     }
 
+    // Called when the skill is done with an input, and when it is released to the SkillPool,
+    // which keeps it (and the follow-up skills) across activities: no views or results built for
+    // the previous activity must be kept, not to leak it.
     @Override
     public void cleanup() {
+        resetSearchState();
+        if (followUpOutputs != null) {
+            for (final SearchOutput followUpOutput : followUpOutputs) {
+                followUpOutput.resetSearchState();
+            }
+        }
+    }
+
+    private void resetSearchState() {
+        tryAgain = false;
+        extractedResults.clear();
+        resultsLayout = null;
+        displayedResultCount = 0;
     }
 }
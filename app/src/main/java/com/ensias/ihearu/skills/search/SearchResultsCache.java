@@ -0,0 +1,243 @@
+package com.ensias.ihearu.skills.search;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Two-tier cache of search results, keyed by normalized query and DuckDuckGo locale: the most
+// recently used results are kept in memory, while a bounded number of bytes is stored on disk so
+// that results survive app restarts and are available offline. Results older than FRESH_MILLIS
+// can still be used, but should be revalidated, while those older than MAX_AGE_MILLIS are dropped.
+public final class SearchResultsCache {
+
+    public static final String TAG = SearchResultsCache.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "search_results";
+    private static final int MAX_MEMORY_ENTRIES = 32;
+    private static final long MAX_DISK_BYTES = 1024 * 1024;
+    private static final long FRESH_MILLIS = 60 * 60 * 1000L; // 1 hour
+    private static final long MAX_AGE_MILLIS = 7 * 24 * 60 * 60 * 1000L; // 1 week
+
+    public static class Entry {
+        public final List<SearchOutput.Data> results;
+        public final long timestamp;
+
+        Entry(final List<SearchOutput.Data> results, final long timestamp) {
+            this.results = Collections.unmodifiableList(results);
+            this.timestamp = timestamp;
+        }
+
+        public boolean isFresh() {
+            return System.currentTimeMillis() - timestamp < FRESH_MILLIS;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() - timestamp >= MAX_AGE_MILLIS;
+        }
+    }
+
+    @SuppressLint("StaticFieldLeak") // only the application context is stored
+    @Nullable private static SearchResultsCache instance = null;
+
+    private final File directory;
+    // guarded by this; in access order, so that the least recently used entry is the first one
+    private final Map<String, Entry> memoryCache =
+            new LinkedHashMap<String, Entry>(MAX_MEMORY_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+
+
+    private SearchResultsCache(final Context context) {
+        directory = new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME);
+    }
+
+    public static synchronized SearchResultsCache getInstance(final Context context) {
+        if (instance == null) {
+            instance = new SearchResultsCache(context);
+        }
+        return instance;
+    }
+
+    // queries differing only in case and spacing give the same results
+    public static String buildKey(final String query, final String duckDuckGoLocale) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT)
+                + "|" + duckDuckGoLocale;
+    }
+
+
+    @Nullable
+    public synchronized Entry get(final String key) {
+        @Nullable Entry entry = memoryCache.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry == null) {
+                return null;
+            }
+            memoryCache.put(key, entry);
+        }
+
+        if (entry.isExpired()) {
+            memoryCache.remove(key);
+            //noinspection ResultOfMethodCallIgnored
+            fileForKey(key).delete();
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized void put(final String key, final List<SearchOutput.Data> results) {
+        final Entry entry = new Entry(new ArrayList<>(results), System.currentTimeMillis());
+        memoryCache.put(key, entry);
+        try {
+            writeToDisk(key, entry);
+            trimDisk();
+        } catch (final IOException | JSONException e) {
+            Log.w(TAG, "Could not store search results on disk", e);
+        }
+    }
+
+
+    @Nullable
+    private Entry readFromDisk(final String key) {
+        final File file = fileForKey(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (InputStream inputStream = new FileInputStream(file)) {
+            final byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int readBytes;
+            while (offset < bytes.length
+                    && (readBytes = inputStream.read(bytes, offset, bytes.length - offset)) > 0) {
+                offset += readBytes;
+            }
+
+            final JSONObject json = new JSONObject(new String(bytes, 0, offset,
+                    StandardCharsets.UTF_8));
+            if (!key.equals(json.getString("key"))) {
+                return null; // hash collision
+            }
+
+            final JSONArray jsonResults = json.getJSONArray("results");
+            final List<SearchOutput.Data> results = new ArrayList<>(jsonResults.length());
+            for (int i = 0; i < jsonResults.length(); ++i) {
+                final JSONObject jsonResult = jsonResults.getJSONObject(i);
+                final SearchOutput.Data result = new SearchOutput.Data();
+                result.title = jsonResult.getString("title");
+                result.thumbnailUrl = jsonResult.getString("thumbnailUrl");
+                result.url = jsonResult.getString("url");
+                result.description = jsonResult.getString("description");
+                results.add(result);
+            }
+            return new Entry(results, json.getLong("timestamp"));
+
+        } catch (final IOException | JSONException e) {
+            Log.w(TAG, "Could not read search results from disk", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(final String key, final Entry entry)
+            throws IOException, JSONException {
+        final JSONArray jsonResults = new JSONArray();
+        for (final SearchOutput.Data result : entry.results) {
+            jsonResults.put(new JSONObject()
+                    .put("title", result.title)
+                    .put("thumbnailUrl", result.thumbnailUrl)
+                    .put("url", result.url)
+                    .put("description", result.description));
+        }
+        final JSONObject json = new JSONObject()
+                .put("key", key)
+                .put("timestamp", entry.timestamp)
+                .put("results", jsonResults);
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        // write to a temporary file first, so that a partially written file is never read
+        final File file = fileForKey(key);
+        final File temporaryFile = new File(directory, file.getName() + ".tmp");
+        try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+            outputStream.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!temporaryFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            throw new IOException("Could not rename " + temporaryFile + " to " + file);
+        }
+    }
+
+    // deletes the least recently written files until the total size is below MAX_DISK_BYTES
+    private void trimDisk() {
+        @Nullable final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (final File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= MAX_DISK_BYTES) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (final File file : files) {
+            if (totalBytes <= MAX_DISK_BYTES) {
+                break;
+            }
+            final long fileBytes = file.length();
+            if (file.delete()) {
+                totalBytes -= fileBytes;
+            }
+        }
+    }
+
+    @NonNull
+    private File fileForKey(final String key) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-1")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder fileName = new StringBuilder(hash.length * 2);
+            for (final byte b : hash) {
+                fileName.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return new File(directory, fileName.toString());
+        } catch (final NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android
+            throw new IllegalStateException(e);
+        }
+    }
+}
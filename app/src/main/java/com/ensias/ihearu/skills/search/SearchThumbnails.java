@@ -0,0 +1,100 @@
+package com.ensias.ihearu.skills.search;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.net.Uri;
+import android.widget.ImageView;
+
+import androidx.annotation.Nullable;
+
+import com.squareup.picasso.LruCache;
+import com.squareup.picasso.OkHttp3Downloader;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import com.ensias.ihearu.R;
+import com.ensias.ihearu.util.ConnectionUtils;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Cache;
+
+// Loads the icons of search results with a Picasso instance separate from the default one, with
+// memory and disk caches sized for small icons. Icons are downloaded and decoded (already scaled
+// down to the size they are displayed at) as soon as results are extracted, so that they are
+// usually already in the memory cache when the views of the results are built.
+public final class SearchThumbnails {
+
+    private static final String DISK_CACHE_DIRECTORY_NAME = "search_thumbnails";
+    private static final long DISK_CACHE_BYTES = 5 * 1024 * 1024;
+    private static final int MEMORY_CACHE_BYTES = 2 * 1024 * 1024;
+    // results of the same website have the same icon, no need to prefetch it multiple times
+    private static final int MAX_REMEMBERED_HOSTS = 64;
+
+    @SuppressLint("StaticFieldLeak") // only the application context is stored
+    @Nullable private static SearchThumbnails instance = null;
+
+    private final Picasso picasso;
+    private final int maxSize;
+    // guarded by itself
+    private final Set<String> prefetchedHosts = Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>(MAX_REMEMBERED_HOSTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_REMEMBERED_HOSTS;
+                }
+            });
+
+
+    private SearchThumbnails(final Context context) {
+        final Context appContext = context.getApplicationContext();
+        maxSize = appContext.getResources()
+                .getDimensionPixelSize(R.dimen.searchResultThumbnailMaxSize);
+        picasso = new Picasso.Builder(appContext)
+                .downloader(new OkHttp3Downloader(ConnectionUtils.newClientBuilder()
+                        .cache(new Cache(new File(appContext.getCacheDir(),
+                                DISK_CACHE_DIRECTORY_NAME), DISK_CACHE_BYTES))
+                        .build()))
+                .memoryCache(new LruCache(MEMORY_CACHE_BYTES))
+                .build();
+    }
+
+    public static synchronized SearchThumbnails getInstance(final Context context) {
+        if (instance == null) {
+            instance = new SearchThumbnails(context);
+        }
+        return instance;
+    }
+
+
+    // can be called from any thread
+    public void prefetch(final SearchOutput.Data result) {
+        @Nullable final String host = Uri.parse(result.url).getHost();
+        if (host != null) {
+            synchronized (prefetchedHosts) {
+                if (!prefetchedHosts.add(host)) {
+                    return;
+                }
+            }
+        }
+        load(result.thumbnailUrl).fetch();
+    }
+
+    // to be called from the main thread
+    public void loadInto(final SearchOutput.Data result, final ImageView imageView) {
+        load(result.thumbnailUrl).into(imageView);
+    }
+
+    // the requests used to prefetch and to display must be the same, otherwise the image
+    // prefetched in the memory cache would not be used
+    private RequestCreator load(final String thumbnailUrl) {
+        return picasso.load(thumbnailUrl)
+                .resize(maxSize, maxSize)
+                .centerInside()
+                .onlyScaleDown();
+    }
+}
@@ -1,32 +1,116 @@
 package com.ensias.ihearu.util;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public final class ConnectionUtils {
 
+    public interface BodyReader<T> {
+        // the reader decodes the body using the charset in the Content-Type header or in the
+        // byte order mark, falling back to UTF-8
+        T read(Reader reader) throws IOException;
+    }
+
+    // The requests made while running something in a group, see runInGroup(), which can then be
+    // cancelled all together, e.g. when the evaluation which made them is not needed anymore,
+    // without affecting the other requests made in the meantime.
+    public static final class RequestGroup {
+        private final List<Call> calls = new ArrayList<>();
+        private boolean cancelled = false;
+
+        synchronized void add(final Call call) {
+            if (cancelled) {
+                call.cancel(); // the request fails as soon as it is executed
+            } else {
+                calls.add(call);
+            }
+        }
+
+        // The requests of the group still running, and the ones made later, fail with an
+        // IOException. Can be called from any thread.
+        public synchronized void cancel() {
+            cancelled = true;
+            for (final Call call : calls) {
+                call.cancel();
+            }
+            calls.clear();
+        }
+    }
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long READ_TIMEOUT_SECONDS = 10;
+    // the whole call, including redirects and reading the body, has to finish within this time
+    public static final long DEFAULT_DEADLINE_MILLIS = 20000;
+
+    // Shared by all requests, so that connections (and TLS sessions) are kept alive and reused,
+    // e.g. between subsequent searches. Responses are transparently requested and decompressed
+    // with gzip, as long as no Accept-Encoding header is set manually.
+    private static final OkHttpClient CLIENT = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+            .connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    // the group of the requests made on each thread, if any
+    private static final ThreadLocal<RequestGroup> CURRENT_GROUP = new ThreadLocal<>();
+    // connections stay in the pool for 5 minutes, so there is no need to preconnect more often
+    private static final long PRECONNECT_INTERVAL_MILLIS = 60000;
+    // host -> time of the last preconnection, guarded by itself
+    private static final Map<String, Long> LAST_PRECONNECT_MILLIS = new HashMap<>();
+
     private ConnectionUtils() {
     }
 
+    // Streams the body of the page to the body reader while it is still downloading, so that it
+    // does not need to be kept in memory all at once. The connection is closed when the body
+    // reader returns, even if it did not read the whole body.
+    public static <T> T readPage(final String url,
+                                 final Map<String, String> headers,
+                                 final long deadlineMillis,
+                                 final BodyReader<T> bodyReader) throws IOException {
+        try (Response response = execute(url, headers, deadlineMillis);
+             Reader reader = getBody(response, url).charStream()) {
+            return bodyReader.read(reader);
+        }
+    }
+
     public static String getPage(final String url,
-                                 final Map<String, String> headers) throws IOException {
-        final URLConnection connection = new URL(url).openConnection();
-        for (final Map.Entry<String, String> header : headers.entrySet()) {
-            connection.setRequestProperty(header.getKey(), header.getValue());
+                                 final Map<String, String> headers,
+                                 final long deadlineMillis) throws IOException {
+        try (Response response = execute(url, headers, deadlineMillis)) {
+            // the body is streamed through okio's pooled segments
+            return getBody(response, url).string();
         }
+    }
 
-        final Scanner scanner = new Scanner(connection.getInputStream());
-        return scanner.useDelimiter("\\A").next();
+    public static String getPage(final String url,
+                                 final Map<String, String> headers) throws IOException {
+        return getPage(url, headers, DEFAULT_DEADLINE_MILLIS);
     }
 
     public static String getPage(final String url) throws IOException {
@@ -37,6 +121,91 @@ public final class ConnectionUtils {
         return new JSONObject(getPage(url));
     }
 
+    // Runs the callable on the current thread, adding the requests it makes on this thread to the
+    // group. Requests made on other threads (e.g. background revalidations) are not in the group.
+    public static <T> T runInGroup(final RequestGroup group,
+                                   final Callable<T> callable) throws Exception {
+        @Nullable final RequestGroup previousGroup = CURRENT_GROUP.get();
+        CURRENT_GROUP.set(group);
+        try {
+            return callable.call();
+        } finally {
+            CURRENT_GROUP.set(previousGroup);
+        }
+    }
+
+    private static Response execute(final String url,
+                                    final Map<String, String> headers,
+                                    final long deadlineMillis) throws IOException {
+        final Request.Builder requestBuilder = new Request.Builder().url(url);
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+
+        final Call call = CLIENT.newCall(requestBuilder.build());
+        call.timeout().timeout(deadlineMillis, TimeUnit.MILLISECONDS);
+        @Nullable final RequestGroup group = CURRENT_GROUP.get();
+        if (group != null) {
+            group.add(call);
+        }
+        final Response response = call.execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("Unexpected response code " + response.code()
+                    + " for url " + url);
+        }
+        return response;
+    }
+
+    private static ResponseBody getBody(final Response response,
+                                        final String url) throws IOException {
+        final ResponseBody body = response.body();
+        if (body == null) {
+            throw new IOException("Empty response for url " + url);
+        }
+        return body;
+    }
+
+    // returns a builder for clients sharing connections with the one used by getPage()
+    public static OkHttpClient.Builder newClientBuilder() {
+        return CLIENT.newBuilder();
+    }
+
+    // Opens a connection to the host of the url in the background and leaves it in the pool, so
+    // that a request made shortly after does not have to wait for the DNS lookup and the TCP and
+    // TLS handshakes. Just a HEAD request to the root of the host is made, and errors are ignored.
+    public static void preconnect(final String url) {
+        @Nullable final HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        synchronized (LAST_PRECONNECT_MILLIS) {
+            @Nullable final Long lastPreconnectMillis = LAST_PRECONNECT_MILLIS.get(httpUrl.host());
+            if (lastPreconnectMillis != null
+                    && now - lastPreconnectMillis < PRECONNECT_INTERVAL_MILLIS) {
+                return;
+            }
+            LAST_PRECONNECT_MILLIS.put(httpUrl.host(), now);
+        }
+
+        final Request request = new Request.Builder()
+                .url(httpUrl.resolve("/"))
+                .head()
+                .build();
+        CLIENT.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull final Call call, @NonNull final IOException e) {
+            }
+
+            @Override
+            public void onResponse(@NonNull final Call call, @NonNull final Response response) {
+                response.close(); // the connection goes back to the pool
+            }
+        });
+    }
+
     public static String urlEncode(final String s) throws UnsupportedEncodingException {
         return URLEncoder.encode(s, "utf8");
     }
@@ -1,5 +1,6 @@
 package com.ensias.ihearu.util;
 
+import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Bundle;
@@ -8,6 +9,7 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.os.ConfigurationCompat;
 import androidx.core.os.LocaleListCompat;
 import androidx.preference.PreferenceManager;
 
@@ -36,13 +38,14 @@ public abstract class LocaleAwareActivity extends AppCompatActivity {
     private void setLocale() {
         @NonNull Locale sectionsLocale;
         try {
-            sectionsLocale = Sections.setLocale(LocaleUtils.getAvailableLocalesFromPreferences(this));
+            sectionsLocale = Sections.setLocale(this, getAvailableLocalesFromPreferences(this));
 
         } catch (final LocaleUtils.UnsupportedLocaleException e) {
             Log.w(TAG, "Current locale is not supported, defaulting to English", e);
             try {
                 // TODO ask the user to manually choose a locale instead of defaulting to english
-                sectionsLocale = Sections.setLocale(LocaleListCompat.create(Locale.ENGLISH));
+                sectionsLocale = Sections.setLocale(this,
+                        LocaleListCompat.create(Locale.ENGLISH));
             } catch (final LocaleUtils.UnsupportedLocaleException e1) {
                 Log.wtf(TAG, "COULD NOT LOAD THE ENGLISH LOCALE SECTIONS, IMPOSSIBLE!", e1);
                 return;
@@ -57,6 +60,22 @@ public abstract class LocaleAwareActivity extends AppCompatActivity {
     }
 
 
+    private static LocaleListCompat getAvailableLocalesFromPreferences(final Context context) {
+        final String language = PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.pref_key_language), null);
+        if (language == null || language.trim().isEmpty()) {
+            return ConfigurationCompat.getLocales(context.getResources().getConfiguration());
+        } else {
+            final String[] languageCountry = language.split("-");
+            if (languageCountry.length == 1) {
+                return LocaleListCompat.create(new Locale(language));
+            } else {
+                return LocaleListCompat.create(new Locale(languageCountry[0], languageCountry[1]));
+            }
+        }
+    }
+
+
     @Override
     protected void onCreate(@Nullable final Bundle savedInstanceState) {
         currentLanguage = getLocaleFromPreferences();
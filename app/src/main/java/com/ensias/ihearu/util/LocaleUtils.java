@@ -1,17 +1,12 @@
 package com.ensias.ihearu.util;
 
-import android.content.Context;
-
 import androidx.annotation.NonNull;
-import androidx.core.os.ConfigurationCompat;
-import androidx.core.os.LocaleListCompat;
-import androidx.preference.PreferenceManager;
-
-import com.ensias.ihearu.R;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
+// Does not depend on the Android framework, so that it can also be used in benchmarks on the JVM
 public final class LocaleUtils {
 
     public static class UnsupportedLocaleException extends Exception {
@@ -41,15 +36,15 @@ public final class LocaleUtils {
 
     @NonNull
     public static LocaleResolutionResult resolveSupportedLocale(
-            final LocaleListCompat availableLocales,
+            final List<Locale> availableLocales,
             final Collection<String> supportedLocales)
             throws UnsupportedLocaleException {
         UnsupportedLocaleException unsupportedLocaleException = null;
-        for (int i = 0; i < availableLocales.size(); i++) {
+        for (final Locale availableLocale : availableLocales) {
             try {
                 final String supportedLocaleString =
-                        resolveLocaleString(availableLocales.get(i), supportedLocales);
-                return new LocaleResolutionResult(availableLocales.get(i), supportedLocaleString);
+                        resolveLocaleString(availableLocale, supportedLocales);
+                return new LocaleResolutionResult(availableLocale, supportedLocaleString);
             } catch (final UnsupportedLocaleException e) {
                 if (unsupportedLocaleException == null) {
                     unsupportedLocaleException = e;
@@ -93,19 +88,4 @@ public final class LocaleUtils {
         // fail
         throw new UnsupportedLocaleException(locale);
     }
-
-    public static LocaleListCompat getAvailableLocalesFromPreferences(final Context context) {
-        final String language = PreferenceManager.getDefaultSharedPreferences(context)
-                .getString(context.getString(R.string.pref_key_language), null);
-        if (language == null || language.trim().isEmpty()) {
-            return ConfigurationCompat.getLocales(context.getResources().getConfiguration());
-        } else {
-            final String[] languageCountry = language.split("-");
-            if (languageCountry.length == 1) {
-                return LocaleListCompat.create(new Locale(language));
-            } else {
-                return LocaleListCompat.create(new Locale(languageCountry[0], languageCountry[1]));
-            }
-        }
-    }
 }
@@ -2,7 +2,6 @@ package com.ensias.ihearu.util;
 
 import org.dicio.skill.util.WordExtractor;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -10,6 +9,13 @@ import java.util.regex.Pattern;
 public final class StringUtils {
     private static final Pattern PUNCTUATION_PATTERN = Pattern.compile("\\p{Punct}");
     private static final Pattern WORD_DELIMITERS_PATTERN = Pattern.compile("[^\\p{L}0-9]");
+    private static final ThreadLocal<DistanceBuffers> DISTANCE_BUFFERS =
+            new ThreadLocal<DistanceBuffers>() {
+                @Override
+                protected DistanceBuffers initialValue() {
+                    return new DistanceBuffers();
+                }
+            };
 
     private StringUtils() {
     }
@@ -47,98 +53,172 @@ public final class StringUtils {
         return string == null || string.isEmpty();
     }
 
-    private static String cleanStringForDistance(final String s) {
+    // Lowercases, normalizes and removes all non-letter non-digit characters. Strings compared
+    // many times (e.g. app labels) can be cleaned only once and passed to the *OfCleaned methods.
+    public static String cleanStringForDistance(final String s) {
         return WORD_DELIMITERS_PATTERN.matcher(WordExtractor.nfkdNormalizeWord(s.toLowerCase()))
                 .replaceAll("");
     }
 
-    // Returns the dynamic programming memory obtained when calculating the Levenshtein distance.
+    // Buffers reused by all distance calculations on the same thread, grown when needed, so that
+    // comparing a string with hundreds of others (e.g. app labels) does not allocate anything
+    private static class DistanceBuffers {
+        int[] a = new int[32];
+        int[] b = new int[32];
+        int[] memory = new int[33 * 33];
+    }
 
-    private static int[][] levenshteinDistanceMemory(final String a, final String b) {
-        // memory already filled with zeros, as it's the default value for int
-        final int[][] memory = new int[a.length() + 1][b.length() + 1];
+    // Fills the buffer with the lowercase code point at each char index of s (as compared by the
+    // distance algorithms), growing it if needed, and returns the (possibly new) buffer.
+    private static int[] lowercaseCodePoints(final String s, final int[] buffer) {
+        final int[] result = buffer.length >= s.length() ? buffer : new int[s.length() * 2];
+        for (int i = 0; i < s.length(); ++i) {
+            result[i] = Character.toLowerCase(s.codePointAt(i));
+        }
+        return result;
+    }
 
-        for (int i = 0; i <= a.length(); ++i) {
-            memory[i][0] = i;
+    private static DistanceBuffers prepareBuffers(final String a, final String b) {
+        final DistanceBuffers buffers = DISTANCE_BUFFERS.get();
+        buffers.a = lowercaseCodePoints(a, buffers.a);
+        buffers.b = lowercaseCodePoints(b, buffers.b);
+        return buffers;
+    }
+
+    // Fills buffers.memory with the dynamic programming memory obtained when calculating the
+    // Levenshtein distance, stored row by row with rows of length b.length()+1.
+    private static void levenshteinDistanceMemory(final DistanceBuffers buffers,
+                                                  final int aLength,
+                                                  final int bLength) {
+        final int rowLength = bLength + 1;
+        final int size = (aLength + 1) * rowLength;
+        if (buffers.memory.length < size) {
+            buffers.memory = new int[size * 2];
         }
-        for (int j = 0; j <= b.length(); ++j) {
-            memory[0][j] = j;
+        final int[] memory = buffers.memory;
+        final int[] a = buffers.a;
+        final int[] b = buffers.b;
+
+        for (int i = 0; i <= aLength; ++i) {
+            memory[i * rowLength] = i;
+        }
+        for (int j = 0; j <= bLength; ++j) {
+            memory[j] = j;
         }
 
-        for (int i = 0; i < a.length(); ++i) {
-            for (int j = 0; j < b.length(); ++j) {
-                final int substitutionCost = Character.toLowerCase(a.codePointAt(i))
-                        == Character.toLowerCase(b.codePointAt(j)) ? 0 : 1;
-                memory[i + 1][j + 1] = Math.min(Math.min(
-                        memory[i][j + 1] + 1,
-                        memory[i + 1][j] + 1),
-                        memory[i][j] + substitutionCost);
+        for (int i = 0; i < aLength; ++i) {
+            final int row = i * rowLength;
+            final int nextRow = row + rowLength;
+            for (int j = 0; j < bLength; ++j) {
+                final int substitutionCost = a[i] == b[j] ? 0 : 1;
+                memory[nextRow + j + 1] = Math.min(Math.min(
+                        memory[row + j + 1] + 1,
+                        memory[nextRow + j] + 1),
+                        memory[row + j] + substitutionCost);
             }
         }
+    }
 
-        return memory;
+
+    public static int levenshteinDistance(final String aNotCleaned, final String bNotCleaned) {
+        return levenshteinDistanceOfCleaned(
+                cleanStringForDistance(aNotCleaned), cleanStringForDistance(bNotCleaned));
     }
 
-    private static class LevenshteinMemoryPos {
-        final int i;
-        final int j;
-        LevenshteinMemoryPos(final int i, final int j) {
-            this.i = i;
-            this.j = j;
-        }
+    public static int levenshteinDistanceOfCleaned(final String a, final String b) {
+        return levenshteinDistanceOfCleaned(a, b, Integer.MAX_VALUE);
     }
 
-    private static List<LevenshteinMemoryPos> pathInLevenshteinMemory(
-            final String a, final String b, final int[][] memory) {
-        // follow the path from bottom right (score==distance) to top left (where score==0)
-        final List<LevenshteinMemoryPos> positions = new ArrayList<>();
-        int i = a.length() - 1;
-        int j = b.length() - 1;
-        while (i >= 0 && j >= 0) {
-            positions.add(new LevenshteinMemoryPos(i, j));
-            if (memory[i + 1][j + 1] == memory[i][j + 1] + 1) {
-                // the path goes up
-                --i;
-            } else if (memory[i + 1][j + 1] == memory[i + 1][j] + 1) {
-                // the path goes left
-                --j;
-            } else  {
-                // the path goes up-left diagonally (surely either
-                // memory[i+1][j+1] == memory[i][j] or memory[i+1][j+1] == memory[i][j] + 1)
-                --i;
-                --j;
-            }
+    // Only keeps two rows of the memory, since the path is not needed. If the distance is greater
+    // than maxDistance, some value greater than maxDistance is returned, possibly not the exact
+    // distance: calculations stop as soon as the minimum of a row (which never decreases in the
+    // following rows) or the length difference (a lower bound) are greater than maxDistance.
+    public static int levenshteinDistanceOfCleaned(final String a,
+                                                   final String b,
+                                                   final int maxDistance) {
+        if (Math.abs(a.length() - b.length()) > maxDistance) {
+            return maxDistance + 1;
         }
-        return positions;
-    }
 
+        final DistanceBuffers buffers = prepareBuffers(a, b);
+        final int rowLength = b.length() + 1;
+        if (buffers.memory.length < 2 * rowLength) {
+            buffers.memory = new int[4 * rowLength];
+        }
+        final int[] memory = buffers.memory;
 
-    public static int levenshteinDistance(final String aNotCleaned, final String bNotCleaned) {
-        final String a = cleanStringForDistance(aNotCleaned);
-        final String b = cleanStringForDistance(bNotCleaned);
-        return levenshteinDistanceMemory(a, b)[a.length()][b.length()];
+        int row = 0;
+        int nextRow = rowLength;
+        for (int j = 0; j <= b.length(); ++j) {
+            memory[j] = j;
+        }
+        for (int i = 0; i < a.length(); ++i) {
+            memory[nextRow] = i + 1;
+            int rowMinimum = i + 1;
+            for (int j = 0; j < b.length(); ++j) {
+                final int substitutionCost = buffers.a[i] == buffers.b[j] ? 0 : 1;
+                final int value = Math.min(Math.min(
+                        memory[row + j + 1] + 1,
+                        memory[nextRow + j] + 1),
+                        memory[row + j] + substitutionCost);
+                memory[nextRow + j + 1] = value;
+                rowMinimum = Math.min(rowMinimum, value);
+            }
+            if (rowMinimum > maxDistance) {
+                return maxDistance + 1;
+            }
+
+            final int tmp = row;
+            row = nextRow;
+            nextRow = tmp;
+        }
+        return memory[row + b.length()];
     }
 
 
     public static int customStringDistance(final String aNotCleaned, final String bNotCleaned) {
-        final String a = cleanStringForDistance(aNotCleaned);
-        final String b = cleanStringForDistance(bNotCleaned);
-        final int[][] memory = levenshteinDistanceMemory(a, b);
+        return customStringDistanceOfCleaned(
+                cleanStringForDistance(aNotCleaned), cleanStringForDistance(bNotCleaned));
+    }
+
+    // The full memory is needed to follow the path, but it is kept in a reusable buffer
+    public static int customStringDistanceOfCleaned(final String a, final String b) {
+        final DistanceBuffers buffers = prepareBuffers(a, b);
+        levenshteinDistanceMemory(buffers, a.length(), b.length());
+        final int[] memory = buffers.memory;
+        final int rowLength = b.length() + 1;
 
         int matchingCharCount = 0;
         int subsequentChars = 0;
         int maxSubsequentChars = 0;
-        for (final LevenshteinMemoryPos pos : pathInLevenshteinMemory(a, b, memory)) {
-            if (Character.toLowerCase(a.codePointAt(pos.i))
-                    == Character.toLowerCase(b.codePointAt(pos.j))) {
+        // follow the path from bottom right (score==distance) to top left (where score==0)
+        int i = a.length() - 1;
+        int j = b.length() - 1;
+        while (i >= 0 && j >= 0) {
+            if (buffers.a[i] == buffers.b[j]) {
                 ++matchingCharCount;
                 ++subsequentChars;
                 maxSubsequentChars = Math.max(maxSubsequentChars, subsequentChars);
             } else {
                 subsequentChars = Math.max(0, subsequentChars - 1);
             }
+
+            final int current = memory[(i + 1) * rowLength + j + 1];
+            if (current == memory[i * rowLength + j + 1] + 1) {
+                // the path goes up
+                --i;
+            } else if (current == memory[(i + 1) * rowLength + j] + 1) {
+                // the path goes left
+                --j;
+            } else  {
+                // the path goes up-left diagonally (surely either
+                // memory[i+1][j+1] == memory[i][j] or memory[i+1][j+1] == memory[i][j] + 1)
+                --i;
+                --j;
+            }
         }
 
-        return memory[a.length()][b.length()] - maxSubsequentChars - matchingCharCount;
+        return memory[a.length() * rowLength + b.length()]
+                - maxSubsequentChars - matchingCharCount;
     }
 }
@@ -0,0 +1,116 @@
+package com.ensias.ihearu.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Immutable index for fuzzy lookups of items by name, based on the character trigrams of their
+// keys. Finding the candidates only requires visiting the posting lists of the trigrams in the
+// query, so the (usually slow) string distance used to choose between them can be calculated just
+// for a small shortlist instead of for all items. Keys should be cleaned beforehand, e.g. with
+// StringUtils.cleanStringForDistance(), and so should queries.
+public final class TrigramIndex<T> {
+
+    public interface KeyExtractor<T> {
+        String getKey(T item);
+    }
+
+    // added at the beginning and at the end of keys, so that short keys have trigrams, too
+    private static final char PADDING = '\0';
+
+    private final List<T> items;
+    private final int[] trigramCounts;
+    private final Map<Long, int[]> postings;
+
+
+    public TrigramIndex(final List<T> items, final KeyExtractor<T> keyExtractor) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+        this.trigramCounts = new int[items.size()];
+
+        final Map<Long, List<Integer>> postingLists = new HashMap<>();
+        for (int i = 0; i < items.size(); ++i) {
+            final Set<Long> trigrams = trigramsOf(keyExtractor.getKey(items.get(i)));
+            trigramCounts[i] = trigrams.size();
+            for (final Long trigram : trigrams) {
+                @Nullable List<Integer> postingList = postingLists.get(trigram);
+                if (postingList == null) {
+                    postingList = new ArrayList<>();
+                    postingLists.put(trigram, postingList);
+                }
+                postingList.add(i);
+            }
+        }
+
+        postings = new HashMap<>(postingLists.size() * 4 / 3 + 1);
+        for (final Map.Entry<Long, List<Integer>> postingList : postingLists.entrySet()) {
+            final int[] itemIndices = new int[postingList.getValue().size()];
+            for (int i = 0; i < itemIndices.length; ++i) {
+                itemIndices[i] = postingList.getValue().get(i);
+            }
+            postings.put(postingList.getKey(), itemIndices);
+        }
+    }
+
+    @NonNull
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Returns at most maxCandidates items sharing at least one trigram with the query, the most
+    // similar first according to the Dice coefficient between the two sets of trigrams. Items
+    // equally similar are returned in the order they were provided to the constructor.
+    @NonNull
+    public List<T> getCandidates(final String cleanQuery, final int maxCandidates) {
+        final Set<Long> queryTrigrams = trigramsOf(cleanQuery);
+        final int[] sharedTrigrams = new int[items.size()];
+        final List<Integer> matchingItems = new ArrayList<>();
+        for (final Long trigram : queryTrigrams) {
+            @Nullable final int[] itemIndices = postings.get(trigram);
+            if (itemIndices == null) {
+                continue;
+            }
+            for (final int itemIndex : itemIndices) {
+                if (sharedTrigrams[itemIndex] == 0) {
+                    matchingItems.add(itemIndex);
+                }
+                ++sharedTrigrams[itemIndex];
+            }
+        }
+
+        final float[] similarities = new float[items.size()];
+        for (final int itemIndex : matchingItems) {
+            similarities[itemIndex] = 2.0f * sharedTrigrams[itemIndex]
+                    / (queryTrigrams.size() + trigramCounts[itemIndex]);
+        }
+        final Integer[] sortedItems = matchingItems.toArray(new Integer[0]);
+        Arrays.sort(sortedItems, (a, b) -> similarities[a] != similarities[b]
+                ? Float.compare(similarities[b], similarities[a]) : Integer.compare(a, b));
+
+        final List<T> candidates = new ArrayList<>(Math.min(maxCandidates, sortedItems.length));
+        for (int i = 0; i < sortedItems.length && i < maxCandidates; ++i) {
+            candidates.add(items.get(sortedItems[i]));
+        }
+        return candidates;
+    }
+
+    private static Set<Long> trigramsOf(final String key) {
+        final Set<Long> trigrams = new HashSet<>();
+        char first = PADDING;
+        char second = PADDING;
+        for (int i = 0; i <= key.length(); ++i) {
+            final char third = i < key.length() ? key.charAt(i) : PADDING;
+            trigrams.add(((long) first << 32) | ((long) second << 16) | third);
+            first = second;
+            second = third;
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,235 @@
+package com.ensias.ihearu.eval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.ensias.ihearu.input.InputHypothesis;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class EvaluationSchedulerTest {
+
+    private final List<Runnable> pendingRunnables =
+            Collections.synchronizedList(new ArrayList<>());
+    private final List<EvaluationScheduler.Evaluation> started = new ArrayList<>();
+    private final List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong nowMillis = new AtomicLong(1000);
+    // runnables are executed only when runPending() is called, like on a looper
+    private final EvaluationScheduler scheduler = new EvaluationScheduler(
+            pendingRunnables::add,
+            started::add,
+            (evaluation, reason) -> dropped.add(evaluation.inputs.get(0).text),
+            nowMillis::get);
+
+    private void runPending() {
+        while (!pendingRunnables.isEmpty()) {
+            pendingRunnables.remove(0).run();
+        }
+    }
+
+    private void submit(final String input, final EvaluationScheduler.Source source) {
+        scheduler.submit(Collections.singletonList(new InputHypothesis(input, Float.NaN)),
+                source);
+        runPending();
+    }
+
+    private void submitTyped(final String input) {
+        submit(input, EvaluationScheduler.Source.TYPED);
+    }
+
+    private void submitSpeech(final String input) {
+        submit(input, EvaluationScheduler.Source.SPEECH);
+    }
+
+    private EvaluationScheduler.Evaluation lastStarted() {
+        return started.get(started.size() - 1);
+    }
+
+    // finishes the running evaluation, and returns the inputs of all of the started ones so far
+    private List<String> finishRunning() {
+        scheduler.finish(lastStarted());
+        runPending();
+        return startedInputs();
+    }
+
+    private List<String> startedInputs() {
+        final List<String> inputs = new ArrayList<>();
+        for (final EvaluationScheduler.Evaluation evaluation : started) {
+            inputs.add(evaluation.inputs.get(0).text);
+        }
+        return inputs;
+    }
+
+
+    @Test
+    public void oneAtATimeInOrder() {
+        submitTyped("a");
+        submitTyped("b");
+        submitTyped("c");
+        assertEquals(Collections.singletonList("a"), startedInputs());
+        assertTrue(scheduler.isBusy());
+
+        assertEquals(Arrays.asList("a", "b"), finishRunning());
+        assertEquals(Arrays.asList("a", "b", "c"), finishRunning());
+        assertEquals(Arrays.asList("a", "b", "c"), finishRunning());
+        assertFalse(scheduler.isBusy());
+
+        submitSpeech("d");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), startedInputs());
+    }
+
+    @Test
+    public void speechSupersedesWaitingTypedInputs() {
+        submitTyped("running");
+        submitTyped("typed 1");
+        submitSpeech("speech 1");
+        submitTyped("typed 2");
+        submitSpeech("speech 2");
+
+        // the running evaluation is not interrupted, even if it comes from typed input
+        assertEquals(Collections.singletonList("running"), startedInputs());
+        assertTrue(scheduler.isBusy());
+
+        finishRunning();
+        finishRunning();
+        assertEquals(Arrays.asList("running", "speech 1", "speech 2"), finishRunning());
+        assertFalse(scheduler.isBusy());
+        assertEquals(Arrays.asList("typed 1", "typed 2"), dropped);
+    }
+
+    @Test
+    public void typedInputsDoNotSupersedeSpeech() {
+        submitSpeech("running");
+        submitSpeech("speech");
+        submitTyped("typed");
+
+        finishRunning();
+        assertEquals(Arrays.asList("running", "speech", "typed"), finishRunning());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void oldestWaitingInputIsDropped() {
+        submitTyped("running");
+        submitTyped("1");
+        submitTyped("2");
+        submitTyped("3");
+        submitTyped("4");
+        submitTyped("5");
+
+        finishRunning();
+        finishRunning();
+        assertEquals(Arrays.asList("running", "3", "4", "5"), finishRunning());
+        finishRunning();
+        assertFalse(scheduler.isBusy());
+        assertEquals(Arrays.asList("1", "2"), dropped);
+    }
+
+    @Test
+    public void secondFinishIsIgnored() {
+        submitTyped("a");
+        submitTyped("b");
+        submitTyped("c");
+        final EvaluationScheduler.Evaluation first = lastStarted();
+
+        assertTrue(scheduler.finish(first));
+        runPending();
+        assertFalse(scheduler.finish(first));
+        runPending();
+        assertEquals(Arrays.asList("a", "b"), startedInputs());
+        assertTrue(scheduler.isBusy());
+
+        assertEquals(Arrays.asList("a", "b", "c"), finishRunning());
+    }
+
+    @Test
+    public void cancelAll() {
+        submitTyped("a");
+        submitTyped("b");
+        final EvaluationScheduler.Evaluation first = lastStarted();
+
+        scheduler.cancelAll();
+        assertFalse(scheduler.isBusy());
+        assertFalse(scheduler.finish(first)); // ignored, since forgotten
+        runPending();
+        assertEquals(Collections.singletonList("a"), startedInputs());
+
+        submitTyped("c");
+        assertEquals(Arrays.asList("a", "c"), startedInputs());
+    }
+
+    @Test
+    public void cancelledBeforeStarting() {
+        scheduler.submit(Collections.singletonList(new InputHypothesis("a", Float.NaN)),
+                EvaluationScheduler.Source.TYPED);
+        scheduler.cancelAll(); // before the consumer executor gets to start the evaluation
+        runPending();
+        assertTrue(started.isEmpty());
+        assertFalse(scheduler.isBusy());
+    }
+
+    @Test
+    public void submittedFromManyThreads() throws InterruptedException {
+        // not more than MAX_WAITING_EVALUATIONS, so that none is dropped
+        final Thread[] threads = new Thread[3];
+        for (int i = 0; i < threads.length; ++i) {
+            final String input = String.valueOf(i);
+            threads[i] = new Thread(() -> scheduler.submit(Collections.singletonList(
+                    new InputHypothesis(input, Float.NaN)), EvaluationScheduler.Source.TYPED));
+            threads[i].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        runPending();
+
+        // each one is started exactly once
+        while (scheduler.isBusy()) {
+            finishRunning();
+        }
+        assertEquals(3, started.size());
+        assertEquals(3, startedInputs().stream().distinct().count());
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test
+    public void stageTimestamps() {
+        submitTyped("a");
+        nowMillis.set(1500);
+        submitTyped("b");
+        final EvaluationScheduler.Evaluation first = lastStarted();
+        assertEquals(0, first.getMillisBetween(EvaluationScheduler.Stage.RECEIVED,
+                EvaluationScheduler.Stage.STARTED));
+        assertEquals(-1, first.getMillisBetween(EvaluationScheduler.Stage.RECEIVED,
+                EvaluationScheduler.Stage.SKILL_CHOSEN));
+
+        nowMillis.set(1700);
+        first.mark(EvaluationScheduler.Stage.SKILL_CHOSEN);
+        nowMillis.set(2000);
+        first.mark(EvaluationScheduler.Stage.PROCESSED);
+        nowMillis.set(2100);
+        finishRunning();
+
+        assertEquals(700, first.getMillisBetween(EvaluationScheduler.Stage.RECEIVED,
+                EvaluationScheduler.Stage.SKILL_CHOSEN));
+        assertEquals(300, first.getMillisBetween(EvaluationScheduler.Stage.SKILL_CHOSEN,
+                EvaluationScheduler.Stage.PROCESSED));
+        assertEquals(1100, first.getMillisBetween(EvaluationScheduler.Stage.RECEIVED,
+                EvaluationScheduler.Stage.FINISHED));
+        assertEquals("#0 TYPED STARTED=0ms SKILL_CHOSEN=700ms PROCESSED=1000ms FINISHED=1100ms",
+                first.toString());
+
+        // the second one waited from when it was received to when the first one finished
+        final EvaluationScheduler.Evaluation second = lastStarted();
+        assertEquals(600, second.getMillisBetween(EvaluationScheduler.Stage.RECEIVED,
+                EvaluationScheduler.Stage.STARTED));
+        assertEquals(-1, second.getMillisBetween(EvaluationScheduler.Stage.STARTED,
+                EvaluationScheduler.Stage.FINISHED));
+    }
+}
@@ -0,0 +1,94 @@
+package com.ensias.ihearu.eval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.dicio.skill.FallbackSkill;
+import org.dicio.skill.Skill;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SkillGrammarTest {
+
+    // skills without skill info, like follow-up skills built by outputs
+    private static class NoOpSkill extends FallbackSkill {
+        @Override
+        public void setInput(final String input,
+                             final List<String> inputWords,
+                             final List<String> normalizedWordKeys) {
+        }
+
+        @Override
+        public void processInput() {
+        }
+
+        @Override
+        public void generateOutput() {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+
+    private static final Map<String, String[]> SECTION_GRAMMARS = new HashMap<>();
+    static {
+        SECTION_GRAMMARS.put("util_yes_no", new String[]{"no", "yes"});
+        SECTION_GRAMMARS.put("util_cancel", new String[]{"cancel", "stop", "yes"});
+    }
+
+    private final SkillGrammar.Provider provider =
+            SkillGrammar.fromSectionGrammars(SECTION_GRAMMARS);
+
+
+    @Test
+    public void followUpSkillWithSection() {
+        final Skill skill = SkillGrammar.withSection(new NoOpSkill(), "util_yes_no");
+        assertArrayEquals(new String[]{"no", "yes"}, provider.getGrammar(skill));
+    }
+
+    @Test
+    public void skillWithoutClosedSection() {
+        assertNull(provider.getGrammar(new NoOpSkill()));
+        // e.g. a section with capturing groups, which has no grammar
+        assertNull(provider.getGrammar(SkillGrammar.withSection(new NoOpSkill(), "search")));
+    }
+
+    @Test
+    public void noProvider() {
+        assertNull(SkillGrammar.fromSectionGrammars(null));
+        assertNull(SkillGrammar.ofBatch(Collections.singletonList(
+                SkillGrammar.withSection(new NoOpSkill(), "util_yes_no")), null));
+    }
+
+    @Test
+    public void topBatchGrammar() {
+        final SkillRanker ranker = new SkillRanker(Collections.singletonList(new NoOpSkill()),
+                new NoOpSkill(), null, provider);
+        // the default batch accepts anything
+        assertNull(ranker.getTopBatchGrammar());
+
+        ranker.addBatchToTop(Arrays.asList(
+                SkillGrammar.withSection(new NoOpSkill(), "util_yes_no"),
+                SkillGrammar.withSection(new NoOpSkill(), "util_cancel")));
+        assertArrayEquals(new String[]{"cancel", "no", "stop", "yes"},
+                ranker.getTopBatchGrammar());
+
+        // a single open-ended skill opens the vocabulary of the whole batch
+        ranker.addBatchToTop(Arrays.asList(
+                SkillGrammar.withSection(new NoOpSkill(), "util_yes_no"),
+                new NoOpSkill()));
+        assertNull(ranker.getTopBatchGrammar());
+
+        ranker.removeTopBatch();
+        assertArrayEquals(new String[]{"cancel", "no", "stop", "yes"},
+                ranker.getTopBatchGrammar());
+        ranker.removeAllBatches();
+        assertNull(ranker.getTopBatchGrammar());
+    }
+}
@@ -0,0 +1,72 @@
+package com.ensias.ihearu.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Map;
+
+public class ManifestVoskModelRepositoryTest {
+
+    private static Map<String, VoskModelRepository.ModelInfo> parse(final String manifestUrl,
+                                                                     final String manifest)
+            throws JSONException {
+        return ManifestVoskModelRepository.parseManifest(URI.create(manifestUrl), manifest);
+    }
+
+    @Test
+    public void relativeUrlsAreResolved() throws JSONException {
+        final Map<String, VoskModelRepository.ModelInfo> models = parse(
+                "http://192.168.1.2:8080/vosk/manifest.json",
+                "{\"models\": [{\"locale\": \"en\", \"url\": \"en.zip\"},"
+                        + "{\"locale\": \"fr\", \"url\": \"../other/fr.zip\"},"
+                        + "{\"locale\": \"it\", \"url\": \"/it.zip\"},"
+                        + "{\"locale\": \"de\", \"url\": \"https://example.com/de.zip\"}]}");
+        assertEquals(4, models.size());
+        assertEquals("http://192.168.1.2:8080/vosk/en.zip", models.get("en").url);
+        assertEquals("http://192.168.1.2:8080/other/fr.zip", models.get("fr").url);
+        assertEquals("http://192.168.1.2:8080/it.zip", models.get("it").url);
+        assertEquals("https://example.com/de.zip", models.get("de").url);
+        assertEquals("en", models.get("en").locale);
+    }
+
+    @Test
+    public void relativeUrlsOfLocalManifest() throws JSONException {
+        final VoskModelRepository.ModelInfo model = parse("file:///sdcard/vosk/manifest.json",
+                "{\"models\": [{\"locale\": \"en\", \"url\": \"en.zip\"}]}").get("en");
+        assertEquals("file:/sdcard/vosk/en.zip", model.url);
+        assertTrue(model.isLocalFile());
+    }
+
+    @Test
+    public void sizeAndSha256AreOptional() throws JSONException {
+        final Map<String, VoskModelRepository.ModelInfo> models = parse(
+                "https://example.com/manifest.json",
+                "{\"models\": [{\"locale\": \"en\", \"url\": \"en.zip\", \"size\": 41205931,"
+                        + " \"sha256\": \"A1B2C3\"},"
+                        + "{\"locale\": \"fr\", \"url\": \"fr.zip\"}]}");
+
+        final VoskModelRepository.ModelInfo en = models.get("en");
+        assertEquals(41205931, en.size);
+        assertEquals("a1b2c3", en.sha256);
+        assertFalse(en.isLocalFile());
+
+        final VoskModelRepository.ModelInfo fr = models.get("fr");
+        assertEquals(-1, fr.size);
+        assertNull(fr.sha256);
+    }
+
+    @Test
+    public void invalidManifest() {
+        assertThrows(JSONException.class, () -> parse("https://example.com/manifest.json",
+                "{\"models\": [{\"url\": \"en.zip\"}]}"));
+        assertThrows(JSONException.class, () -> parse("https://example.com/manifest.json",
+                "{\"other\": []}"));
+    }
+}
@@ -0,0 +1,160 @@
+package com.ensias.ihearu.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class VoskModelExtractorTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static byte[] bytes(final String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static long crc(final byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    // entries are stored (i.e. not compressed), so that their content can be found in the zip
+    private File writeZip(final Map<String, String> entries) throws IOException {
+        final File zipFile = temporaryFolder.newFile("model.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (final Map.Entry<String, String> entry : entries.entrySet()) {
+                final ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (!entry.getKey().endsWith("/")) {
+                    final byte[] content = bytes(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(content.length);
+                    zipEntry.setCrc(crc(content));
+                    zip.putNextEntry(zipEntry);
+                    zip.write(content);
+                } else {
+                    zip.putNextEntry(zipEntry);
+                }
+                zip.closeEntry();
+            }
+        }
+        return zipFile;
+    }
+
+    private Map<String, String> modelEntries() {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("vosk-model-small-en/", "");
+        entries.put("vosk-model-small-en/am/final.mdl", "acoustic model");
+        entries.put("vosk-model-small-en/conf/model.conf", "--sample-frequency=16000");
+        entries.put("vosk-model-small-en/README", "readme");
+        return entries;
+    }
+
+    @Test
+    public void extractsEverything() throws IOException, InterruptedException {
+        final File zipFile = writeZip(modelEntries());
+        final File destination = new File(temporaryFolder.getRoot(), "vosk-model");
+        final VoskModelExtractor extractor = new VoskModelExtractor(zipFile, destination);
+
+        extractor.extract();
+        assertEquals("acoustic model", read(new File(destination, "am/final.mdl")));
+        assertEquals("--sample-frequency=16000", read(new File(destination, "conf/model.conf")));
+        assertEquals("readme", read(new File(destination, "README")));
+        assertFalse(extractor.hasPartialExtraction());
+    }
+
+    @Test
+    public void resumesFromPartialManifest() throws IOException, InterruptedException {
+        final File zipFile = writeZip(modelEntries());
+        final File destination = new File(temporaryFolder.getRoot(), "vosk-model");
+        final File staging = new File(temporaryFolder.getRoot(), "vosk-model.staging");
+
+        // pretend that final.mdl was extracted before an interruption, with a marker content of
+        // the same length, which is kept only if the file is not extracted again
+        final byte[] acousticModel = bytes("acoustic model");
+        assertTrue(new File(staging, "am").mkdirs());
+        try (OutputStream outputStream = new FileOutputStream(new File(staging, "am/final.mdl"))) {
+            outputStream.write(bytes("already there!"));
+        }
+        // also a README written only in part, which is not in the manifest
+        try (OutputStream outputStream = new FileOutputStream(new File(staging, "README"))) {
+            outputStream.write(bytes("rea"));
+        }
+        try (OutputStream outputStream = new FileOutputStream(
+                new File(staging, VoskModelExtractor.MANIFEST_FILENAME))) {
+            outputStream.write(bytes(String.format(Locale.ROOT, "%d\t%08x\t%s\n",
+                    acousticModel.length, crc(acousticModel),
+                    "vosk-model-small-en/am/final.mdl")));
+            outputStream.write(bytes("14\tnot a crc\tvosk-model-small-en/conf/model.conf\n"));
+            outputStream.write(bytes("6\t0000")); // truncated line
+        }
+
+        final VoskModelExtractor extractor = new VoskModelExtractor(zipFile, destination);
+        assertTrue(extractor.hasPartialExtraction());
+        extractor.extract();
+        assertEquals("already there!", read(new File(destination, "am/final.mdl")));
+        assertEquals("--sample-frequency=16000", read(new File(destination, "conf/model.conf")));
+        assertEquals("readme", read(new File(destination, "README")));
+        assertFalse(extractor.hasPartialExtraction());
+    }
+
+    @Test
+    public void corruptedEntryIsRejected() throws IOException {
+        final File zipFile = writeZip(modelEntries());
+        // the content of a stored entry is in the zip as is, so flip one of its bytes
+        final byte[] zipBytes = Files.readAllBytes(zipFile.toPath());
+        final int position = new String(zipBytes, StandardCharsets.ISO_8859_1)
+                .indexOf("acoustic model");
+        try (RandomAccessFile file = new RandomAccessFile(zipFile, "rw")) {
+            file.seek(position);
+            file.write('A');
+        }
+
+        final File destination = new File(temporaryFolder.getRoot(), "vosk-model");
+        final VoskModelExtractor extractor = new VoskModelExtractor(zipFile, destination);
+        assertThrows(IOException.class, extractor::extract);
+        assertFalse(destination.exists());
+        assertFalse(new File(temporaryFolder.getRoot(), "vosk-model.staging/am/final.mdl")
+                .exists());
+        assertTrue(extractor.hasPartialExtraction());
+
+        extractor.discardPartialExtraction();
+        assertFalse(extractor.hasPartialExtraction());
+    }
+
+    @Test
+    public void zipSlipIsRejected() throws IOException {
+        final Map<String, String> entries = modelEntries();
+        entries.put("vosk-model-small-en/../../evil", "evil");
+        final File zipFile = writeZip(entries);
+
+        final File destination = new File(temporaryFolder.newFolder("models"), "vosk-model");
+        final VoskModelExtractor extractor = new VoskModelExtractor(zipFile, destination);
+        assertThrows(IOException.class, extractor::extract);
+        assertFalse(destination.exists());
+        assertFalse(new File(temporaryFolder.getRoot(), "evil").exists());
+    }
+}
@@ -0,0 +1,64 @@
+package com.ensias.ihearu.input;
+
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class VoskModelRepositoryTest {
+
+    // SHA-256 of "hello"
+    private static final String HELLO_SHA256 =
+            "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File writeFile(final String content) throws IOException {
+        final File file = temporaryFolder.newFile();
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    private static VoskModelRepository.ModelInfo modelInfo(final long size, final String sha256) {
+        return new VoskModelRepository.ModelInfo("en", "https://example.com/en.zip", size, sha256);
+    }
+
+    @Test
+    public void matchingSizeAndSha256() throws IOException {
+        final File file = writeFile("hello");
+        modelInfo(5, HELLO_SHA256).verify(file);
+        modelInfo(5, HELLO_SHA256.toUpperCase()).verify(file);
+    }
+
+    @Test
+    public void unknownSizeOrSha256AreNotChecked() throws IOException {
+        final File file = writeFile("hello");
+        modelInfo(-1, HELLO_SHA256).verify(file);
+        modelInfo(5, null).verify(file);
+        modelInfo(-1, null).verify(file);
+    }
+
+    @Test
+    public void wrongSize() throws IOException {
+        final File file = writeFile("hello");
+        assertThrows(IOException.class, () -> modelInfo(4, HELLO_SHA256).verify(file));
+        assertThrows(IOException.class, () -> modelInfo(6, null).verify(file));
+    }
+
+    @Test
+    public void wrongSha256() throws IOException {
+        final File file = writeFile("hellp");
+        assertThrows(IOException.class, () -> modelInfo(5, HELLO_SHA256).verify(file));
+        assertThrows(IOException.class, () -> modelInfo(-1, HELLO_SHA256).verify(file));
+    }
+}
@@ -0,0 +1,132 @@
+package com.ensias.ihearu.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class VoskResultParserTest {
+
+    private static final String RESULT_WITH_WORDS = "{\n"
+            + "  \"alternatives\" : [{\n"
+            + "      \"confidence\" : 351.235687,\n"
+            + "      \"result\" : [{\n"
+            + "          \"end\" : 1.02,\n"
+            + "          \"start\" : 0.6,\n"
+            + "          \"word\" : \"turn\"\n"
+            + "        }],\n"
+            + "      \"text\" : \"turn on the light\"\n"
+            + "    }, {\n"
+            + "      \"confidence\" : 348.5,\n"
+            + "      \"text\" : \"turn on the lights\"\n"
+            + "    }, {\n"
+            + "      \"confidence\" : -1.5e2,\n"
+            + "      \"text\" : \"\\\"quoted\\\" \\u00e8 \\\\ \\/\"\n"
+            + "    }]\n"
+            + "}";
+
+    private static List<String> parseTexts(final String json) {
+        final List<String> texts = new ArrayList<>();
+        VoskResultParser.parseResult(json, (text, confidence) -> texts.add(text));
+        return texts;
+    }
+
+    private static List<Float> parseConfidences(final String json) {
+        final List<Float> confidences = new ArrayList<>();
+        VoskResultParser.parseResult(json, (text, confidence) -> confidences.add(confidence));
+        return confidences;
+    }
+
+    // how results were parsed before VoskResultParser, with org.json
+    private static List<String> baselineTexts(final String json) throws JSONException {
+        final JSONArray alternatives = new JSONObject(json).getJSONArray("alternatives");
+        final List<String> texts = new ArrayList<>();
+        for (int i = 0; i < alternatives.length(); i++) {
+            texts.add(alternatives.getJSONObject(i).getString("text"));
+        }
+        return texts;
+    }
+
+
+    @Test
+    public void alternativesMatchBaseline() throws JSONException {
+        assertEquals(baselineTexts(RESULT_WITH_WORDS), parseTexts(RESULT_WITH_WORDS));
+        assertEquals(Arrays.asList("turn on the light", "turn on the lights",
+                "\"quoted\" \u00e8 \\ /"), parseTexts(RESULT_WITH_WORDS));
+
+        final List<Float> confidences = parseConfidences(RESULT_WITH_WORDS);
+        assertEquals(351.235687f, confidences.get(0), 1e-3f);
+        assertEquals(348.5f, confidences.get(1), 1e-3f);
+        assertEquals(-150f, confidences.get(2), 1e-3f);
+    }
+
+    @Test
+    public void unicodeEscapes() throws JSONException {
+        final String json = "{\"alternatives\" : [{\"confidence\" : 1, \"text\" : "
+                + "\"\\u0645\\u0631\\u062d\\u0628\\u0627 caf\\u00E9\"}]}";
+        assertEquals(baselineTexts(json), parseTexts(json));
+        assertEquals(Collections.singletonList("\u0645\u0631\u062d\u0628\u0627 caf\u00e9"),
+                parseTexts(json));
+
+        assertEquals("\u00e8 ok", VoskResultParser.parsePartial(
+                "{\"partial\" : \"\\u00e8 ok\"}", null));
+        // truncated or invalid escapes result in nothing being found
+        assertTrue(parseTexts("{\"text\" : \"\\u00\"}").isEmpty());
+        assertTrue(parseTexts("{\"text\" : \"\\uzzzz\"}").isEmpty());
+    }
+
+    @Test
+    public void emptyAlternatives() {
+        assertEquals(0, VoskResultParser.parseResult("{\"alternatives\" : []}",
+                (text, confidence) -> { }));
+        assertEquals(0, VoskResultParser.parseResult("{\"alternatives\" : [ ]}",
+                (text, confidence) -> { }));
+        // fields after an empty array are still read
+        assertEquals(Collections.singletonList("hello"),
+                parseTexts("{\"alternatives\" : [], \"text\" : \"hello\"}"));
+    }
+
+    @Test
+    public void textWithoutAlternatives() {
+        assertEquals(Collections.singletonList("turn on the light"),
+                parseTexts("{\"result\" : [{\"word\" : \"turn\"}], "
+                        + "\"text\" : \"turn on the light\"}"));
+        assertTrue(Float.isNaN(parseConfidences("{\"text\" : \"hello\"}").get(0)));
+    }
+
+    @Test
+    public void partialResults() throws JSONException {
+        final String json = "{\n  \"partial\" : \"turn on the\"\n}";
+        final String partial = VoskResultParser.parsePartial(json, null);
+        assertEquals(new JSONObject(json).getString("partial"), partial);
+
+        // the previous partial is returned as is if unchanged, and a new string otherwise
+        final String previous = new String("turn on the");
+        assertSame(previous, VoskResultParser.parsePartial(json, previous));
+        assertEquals("turn on", VoskResultParser.parsePartial(
+                "{\"partial\" : \"turn on\"}", previous));
+        assertEquals("", VoskResultParser.parsePartial("{\"partial\" : \"\"}", previous));
+        assertEquals("hi", VoskResultParser.parsePartial(
+                "{\"partial_result\" : [], \"partial\" : \"hi\"}", null));
+    }
+
+    @Test
+    public void malformedInput() {
+        assertNull(VoskResultParser.parsePartial("", null));
+        assertNull(VoskResultParser.parsePartial("{\"text\" : \"hello\"}", null));
+        assertNull(VoskResultParser.parsePartial("{\"partial\" : \"unterminated", null));
+        assertTrue(parseTexts("not json").isEmpty());
+        assertEquals(Collections.singletonList("first"), parseTexts(
+                "{\"alternatives\" : [{\"text\" : \"first\"}, {\"text\" : "));
+    }
+}
@@ -0,0 +1,127 @@
+package com.ensias.ihearu.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class StringUtilsTest {
+
+    private static final String ALPHABET = "abcde12";
+
+    // the original implementations, with the full memory matrix, used as a reference
+    private static int[][] referenceMemory(final String a, final String b) {
+        final int[][] memory = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); ++i) {
+            memory[i][0] = i;
+        }
+        for (int j = 0; j <= b.length(); ++j) {
+            memory[0][j] = j;
+        }
+        for (int i = 0; i < a.length(); ++i) {
+            for (int j = 0; j < b.length(); ++j) {
+                final int substitutionCost = a.charAt(i) == b.charAt(j) ? 0 : 1;
+                memory[i + 1][j + 1] = Math.min(Math.min(
+                        memory[i][j + 1] + 1,
+                        memory[i + 1][j] + 1),
+                        memory[i][j] + substitutionCost);
+            }
+        }
+        return memory;
+    }
+
+    private static int referenceLevenshtein(final String a, final String b) {
+        return referenceMemory(a, b)[a.length()][b.length()];
+    }
+
+    private static int referenceCustom(final String a, final String b) {
+        final int[][] memory = referenceMemory(a, b);
+        int matchingCharCount = 0;
+        int subsequentChars = 0;
+        int maxSubsequentChars = 0;
+        int i = a.length() - 1;
+        int j = b.length() - 1;
+        while (i >= 0 && j >= 0) {
+            if (a.charAt(i) == b.charAt(j)) {
+                ++matchingCharCount;
+                ++subsequentChars;
+                maxSubsequentChars = Math.max(maxSubsequentChars, subsequentChars);
+            } else {
+                subsequentChars = Math.max(0, subsequentChars - 1);
+            }
+
+            if (memory[i + 1][j + 1] == memory[i][j + 1] + 1) {
+                --i;
+            } else if (memory[i + 1][j + 1] == memory[i + 1][j] + 1) {
+                --j;
+            } else {
+                --i;
+                --j;
+            }
+        }
+        return memory[a.length()][b.length()] - maxSubsequentChars - matchingCharCount;
+    }
+
+    private static String randomString(final Random random, final int maxLength) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; ++i) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+
+    @Test
+    public void distancesMatchReference() {
+        final Random random = new Random(42);
+        // alternating short and long strings also makes the thread local buffers grow and be
+        // reused with stale contents
+        for (int k = 0; k < 2000; ++k) {
+            final int maxLength = k % 2 == 0 ? 6 : 70;
+            final String a = randomString(random, maxLength);
+            final String b = randomString(random, maxLength);
+            assertEquals(a + " " + b, referenceLevenshtein(a, b),
+                    StringUtils.levenshteinDistanceOfCleaned(a, b));
+            assertEquals(a + " " + b, referenceCustom(a, b),
+                    StringUtils.customStringDistanceOfCleaned(a, b));
+        }
+    }
+
+    @Test
+    public void boundedLevenshteinIsExactWithinBound() {
+        final Random random = new Random(1234);
+        for (int k = 0; k < 2000; ++k) {
+            final String a = randomString(random, 12);
+            final String b = randomString(random, 12);
+            final int maxDistance = random.nextInt(8);
+            final int expected = referenceLevenshtein(a, b);
+            final int actual = StringUtils.levenshteinDistanceOfCleaned(a, b, maxDistance);
+            if (expected <= maxDistance) {
+                assertEquals(a + " " + b + " " + maxDistance, expected, actual);
+            } else {
+                assertTrue(a + " " + b + " " + maxDistance, actual > maxDistance);
+            }
+        }
+    }
+
+    @Test
+    public void notCleanedStringsAreCleaned() {
+        assertEquals(0, StringUtils.levenshteinDistance("Hello, World!", "helloworld"));
+        assertEquals(1, StringUtils.levenshteinDistance("Open Maps", "openmap"));
+        assertEquals(StringUtils.customStringDistanceOfCleaned("whatsapp", "watsapp"),
+                StringUtils.customStringDistance("WhatsApp", "wats app"));
+        assertEquals("hello123", StringUtils.cleanStringForDistance("Hello - 123!"));
+    }
+
+    @Test
+    public void emptyStrings() {
+        assertEquals(0, StringUtils.levenshteinDistanceOfCleaned("", ""));
+        assertEquals(3, StringUtils.levenshteinDistanceOfCleaned("", "abc"));
+        assertEquals(3, StringUtils.levenshteinDistanceOfCleaned("abc", "", 5));
+        assertTrue(StringUtils.levenshteinDistanceOfCleaned("abc", "", 2) > 2);
+        assertEquals(3, StringUtils.customStringDistanceOfCleaned("", "abc"));
+    }
+}
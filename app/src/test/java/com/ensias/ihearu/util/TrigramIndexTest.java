@@ -0,0 +1,116 @@
+package com.ensias.ihearu.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TrigramIndexTest {
+
+    private static final List<String> APP_LABELS = Arrays.asList(
+            "Calculator", "Calendar", "Camera", "Chrome", "Clock", "Contacts", "Drive", "Duo",
+            "Files", "Firefox", "Gallery", "Gmail", "Google", "Keep Notes", "Maps", "Messages",
+            "Messenger", "Music", "NewPipe", "Phone", "Photos", "Play Store", "Podcasts",
+            "Recorder", "Settings", "Signal", "Spotify", "Telegram", "Translate", "Twitter",
+            "VLC", "Weather", "WhatsApp", "YouTube", "YouTube Music", "Zoom", "F-Droid",
+            "Instagram", "Netflix", "Outlook", "Sound Recorder", "Voice Recorder", "Wallet");
+
+    private static TrigramIndex<String> buildIndex(final List<String> keys) {
+        return new TrigramIndex<>(keys, key -> key);
+    }
+
+    private static List<String> cleanLabels() {
+        final List<String> labels = new ArrayList<>();
+        for (final String label : APP_LABELS) {
+            labels.add(StringUtils.cleanStringForDistance(label));
+        }
+        return labels;
+    }
+
+    private static int bestDistance(final String query, final List<String> labels) {
+        int bestDistance = Integer.MAX_VALUE;
+        for (final String label : labels) {
+            bestDistance = Math.min(bestDistance,
+                    StringUtils.customStringDistanceOfCleaned(query, label));
+        }
+        return bestDistance;
+    }
+
+
+    @Test
+    public void mostSimilarFirst() {
+        final TrigramIndex<String> index = buildIndex(cleanLabels());
+        assertEquals("youtube", index.getCandidates("youtube", 5).get(0));
+        assertEquals("whatsapp", index.getCandidates("watsapp", 5).get(0));
+        assertEquals(Arrays.asList("youtubemusic", "youtube", "music"),
+                index.getCandidates("youtubemusic", 3));
+    }
+
+    @Test
+    public void tiesKeepInsertionOrder() {
+        final TrigramIndex<String> index = buildIndex(Arrays.asList("abx", "aby", "abz"));
+        assertEquals(Arrays.asList("abx", "aby", "abz"), index.getCandidates("ab", 10));
+        final TrigramIndex<String> reversed = buildIndex(Arrays.asList("abz", "aby", "abx"));
+        assertEquals(Arrays.asList("abz", "aby", "abx"), reversed.getCandidates("ab", 10));
+    }
+
+    @Test
+    public void atMostMaxCandidates() {
+        final TrigramIndex<String> index = buildIndex(cleanLabels());
+        assertEquals(2, index.getCandidates("recorder", 2).size());
+        assertTrue(index.getCandidates("recorder", 0).isEmpty());
+    }
+
+    @Test
+    public void itemsWithoutSharedTrigramsAreExcluded() {
+        final TrigramIndex<String> index = buildIndex(Arrays.asList("maps", "zoom", "duo"));
+        assertEquals(Collections.singletonList("maps"), index.getCandidates("map", 10));
+        assertTrue(index.getCandidates("qwerty", 10).isEmpty());
+        assertTrue(buildIndex(Collections.<String>emptyList()).getCandidates("maps", 10)
+                .isEmpty());
+    }
+
+    @Test
+    public void shortKeysAndQueries() {
+        final TrigramIndex<String> index = buildIndex(Arrays.asList("x", "vlc", "", "duo"));
+        assertEquals("x", index.getCandidates("x", 10).get(0));
+        assertEquals("vlc", index.getCandidates("vl", 10).get(0));
+        assertEquals("", index.getCandidates("", 10).get(0));
+    }
+
+    @Test
+    public void shortlistKeepsBestMatchOfFullScan() {
+        // the original OpenOutput computed the distance from every app label, now only the
+        // shortlisted ones are compared: the best distance must not change for misspelled labels
+        final List<String> labels = cleanLabels();
+        final TrigramIndex<String> index = buildIndex(labels);
+        final Random random = new Random(7);
+        for (int k = 0; k < 1000; ++k) {
+            final StringBuilder query =
+                    new StringBuilder(labels.get(random.nextInt(labels.size())));
+            final int position = random.nextInt(query.length());
+            final char letter = (char) ('a' + random.nextInt(26));
+            switch (random.nextInt(3)) {
+                case 0:
+                    query.setCharAt(position, letter);
+                    break;
+                case 1:
+                    query.insert(position, letter);
+                    break;
+                default:
+                    query.deleteCharAt(position);
+                    break;
+            }
+
+            final String cleanQuery = query.toString();
+            assertEquals(cleanQuery, bestDistance(cleanQuery, labels),
+                    bestDistance(cleanQuery, index.getCandidates(cleanQuery, 16)));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.ensias.ihearu.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Loads the lines of the text files in the corpus/ resources directory, skipping comments
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static List<String> load(final String name) {
+        final InputStream inputStream = Corpus.class.getResourceAsStream("/corpus/" + name);
+        if (inputStream == null) {
+            throw new IllegalArgumentException("Unknown corpus file: " + name);
+        }
+
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines;
+    }
+
+    static List<String> utterances(final String locale) {
+        return load("utterances_" + locale + ".txt");
+    }
+}
@@ -0,0 +1,46 @@
+package com.ensias.ihearu.benchmark;
+
+import com.ensias.ihearu.SectionsGenerated;
+import com.ensias.ihearu.util.LocaleUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Locale resolution as done for the sections, the Vosk models and the DuckDuckGo region
+@State(Scope.Benchmark)
+public class LocaleResolutionBenchmark {
+
+    private static final List<String> DUCK_DUCK_GO_LOCALES = Arrays.asList("ar-es", "au-en",
+            "at-de", "be-fr", "be-nl", "br-pt", "bg-bg", "ca-en", "ca-fr", "ct-ca", "cl-es",
+            "cn-zh", "co-es", "hr-hr", "cz-cs", "dk-da", "ee-et", "fi-fi", "fr-fr", "de-de",
+            "gr-el", "hk-tz", "hu-hu", "in-en", "id-en", "ie-en", "il-en", "it-it", "jp-jp",
+            "kr-kr", "lv-lv", "lt-lt", "my-en", "mx-es", "nl-nl", "nz-en", "no-no", "pk-en",
+            "pe-es", "ph-en", "pl-pl", "pt-pt", "ro-ro", "ru-ru", "xa-ar", "sg-en", "sk-sk",
+            "sl-sl", "za-en", "es-ca", "es-es", "se-sv", "ch-de", "ch-fr", "tw-tz", "th-en",
+            "tr-tr", "us-en", "us-es", "ua-uk", "uk-en", "vn-en");
+
+    private final Collection<String> sectionLocales = SectionsGenerated.localeSectionsMap.keySet();
+    // e.g. a device set to Moroccan Arabic, with French and US English as fallbacks
+    private final List<Locale> availableLocales = Arrays.asList(
+            new Locale("ar", "MA"), Locale.FRANCE, Locale.US);
+
+    @Benchmark
+    public String resolveSectionsLocale() throws LocaleUtils.UnsupportedLocaleException {
+        return LocaleUtils.resolveSupportedLocale(availableLocales, sectionLocales)
+                .supportedLocaleString;
+    }
+
+    @Benchmark
+    public String resolveDuckDuckGoLocale() throws LocaleUtils.UnsupportedLocaleException {
+        return LocaleUtils.resolveSupportedLocale(
+                Collections.singletonList(Locale.CANADA_FRENCH), DUCK_DUCK_GO_LOCALES)
+                .supportedLocaleString;
+    }
+}
@@ -0,0 +1,111 @@
+package com.ensias.ihearu.benchmark;
+
+import com.ensias.ihearu.SectionTables;
+import com.ensias.ihearu.SectionsGenerated;
+import com.ensias.ihearu.eval.EncodedInput;
+import com.ensias.ihearu.eval.SkillRanker;
+import com.ensias.ihearu.eval.WordDictionary;
+
+import org.dicio.skill.FallbackSkill;
+import org.dicio.skill.Skill;
+import org.dicio.skill.chain.ChainSkill;
+import org.dicio.skill.chain.OutputGenerator;
+import org.dicio.skill.standard.StandardRecognizer;
+import org.dicio.skill.standard.StandardRecognizerData;
+import org.dicio.skill.standard.StandardResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Ranks every utterance of the corpus against one skill per compiled section, as done by the
+// skill evaluator for every input. Only recognition is measured: no output is ever generated.
+@State(Scope.Benchmark)
+public class SkillRankerBenchmark {
+
+    private static class NoOpOutput extends OutputGenerator<StandardResult> {
+        @Override
+        public void generate(final StandardResult data) {
+        }
+    }
+
+    private static class NoOpFallback extends FallbackSkill {
+        @Override
+        public void setInput(final String input,
+                             final List<String> inputWords,
+                             final List<String> normalizedWordKeys) {
+        }
+
+        @Override
+        public void processInput() {
+        }
+
+        @Override
+        public void generateOutput() {
+        }
+
+        @Override
+        public void cleanup() {
+        }
+    }
+
+    @Param({"en", "fr"})
+    public String locale;
+
+    // whether to prune candidates with the keyword index, to compare with scoring all skills
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    // encoded in advance, as the evaluator does once for every input
+    private final List<EncodedInput> utterances = new ArrayList<>();
+    private SkillRanker skillRanker;
+
+    @Setup
+    public void setup() throws IOException {
+        final Map<String, StandardRecognizerData> sections
+                = SectionsGenerated.localeSectionsMap.get(locale).get();
+        final SectionTables sectionTables;
+        try (InputStream inputStream = SectionTables.class.getResourceAsStream(
+                "/" + SectionTables.getAssetPath(locale))) {
+            sectionTables = SectionTables.read(inputStream);
+        }
+
+        final List<Skill> skills = new ArrayList<>();
+        final Map<Skill, String[]> skillKeywords = new IdentityHashMap<>();
+        for (final Map.Entry<String, StandardRecognizerData> section : sections.entrySet()) {
+            final Skill skill = new ChainSkill.Builder()
+                    .recognize(new StandardRecognizer(section.getValue()))
+                    .output(new NoOpOutput());
+            skills.add(skill);
+            skillKeywords.put(skill, sectionTables.sectionKeywords.get(section.getKey()));
+        }
+
+        skillRanker = new SkillRanker(skills, new NoOpFallback(),
+                indexed ? skillKeywords::get : null, null,
+                new WordDictionary(sectionTables.words));
+
+        for (final String utterance : Corpus.utterances(locale)) {
+            utterances.add(skillRanker.encode(utterance));
+        }
+    }
+
+    @Benchmark
+    public void getBest(final Blackhole blackhole) {
+        for (final EncodedInput utterance : utterances) {
+            final Skill skill = skillRanker.getBest(utterance);
+            blackhole.consume(skill);
+            if (skill != null) {
+                skill.cleanup();
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ensias.ihearu.benchmark;
+
+import com.ensias.ihearu.util.StringUtils;
+import com.ensias.ihearu.util.TrigramIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// What the open skill does to find the app the user asked for: compare the requested name with
+// the label of every launcher app
+@State(Scope.Benchmark)
+public class StringDistanceBenchmark {
+
+    private final List<String> requestedApps = Arrays.asList(
+            "whatsapp", "google maps", "the calculator", "you tube", "setting", "appareil photo");
+    private List<String> appLabels;
+    private final List<String> cleanRequestedApps = new ArrayList<>();
+    private final List<String> cleanAppLabels = new ArrayList<>();
+    private TrigramIndex<String> appLabelsIndex;
+
+    @Setup
+    public void setup() {
+        appLabels = Corpus.load("app_labels.txt");
+        for (final String requestedApp : requestedApps) {
+            cleanRequestedApps.add(StringUtils.cleanStringForDistance(requestedApp));
+        }
+        for (final String appLabel : appLabels) {
+            cleanAppLabels.add(StringUtils.cleanStringForDistance(appLabel));
+        }
+        appLabelsIndex = new TrigramIndex<>(cleanAppLabels, label -> label);
+    }
+
+    @Benchmark
+    public void customStringDistance(final Blackhole blackhole) {
+        for (final String requestedApp : requestedApps) {
+            for (final String appLabel : appLabels) {
+                blackhole.consume(StringUtils.customStringDistance(requestedApp, appLabel));
+            }
+        }
+    }
+
+    @Benchmark
+    public void levenshteinDistance(final Blackhole blackhole) {
+        for (final String requestedApp : requestedApps) {
+            for (final String appLabel : appLabels) {
+                blackhole.consume(StringUtils.levenshteinDistance(requestedApp, appLabel));
+            }
+        }
+    }
+
+    // with the strings already cleaned, as the open skill does with the requested app name
+    @Benchmark
+    public void customStringDistanceOfCleaned(final Blackhole blackhole) {
+        for (final String requestedApp : cleanRequestedApps) {
+            for (final String appLabel : cleanAppLabels) {
+                blackhole.consume(StringUtils.customStringDistanceOfCleaned(
+                        requestedApp, appLabel));
+            }
+        }
+    }
+
+    @Benchmark
+    public void levenshteinDistanceOfCleanedWithCutoff(final Blackhole blackhole) {
+        for (final String requestedApp : cleanRequestedApps) {
+            for (final String appLabel : cleanAppLabels) {
+                blackhole.consume(StringUtils.levenshteinDistanceOfCleaned(
+                        requestedApp, appLabel, 5));
+            }
+        }
+    }
+
+    // shortlists similar labels with the trigram index and then compares only those, as the open
+    // skill does
+    @Benchmark
+    public void trigramShortlistThenCustomStringDistance(final Blackhole blackhole) {
+        for (final String requestedApp : cleanRequestedApps) {
+            for (final String appLabel : appLabelsIndex.getCandidates(requestedApp, 16)) {
+                blackhole.consume(StringUtils.customStringDistanceOfCleaned(
+                        requestedApp, appLabel));
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.ensias.ihearu.benchmark;
+
+import com.ensias.ihearu.input.WakeWordDetector;
+import com.ensias.ihearu.input.WavFrameSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.vosk.LibVosk;
+import org.vosk.LogLevel;
+import org.vosk.Model;
+import org.vosk.Recognizer;
+
+import java.io.File;
+import java.io.IOException;
+
+// Runs the wake word detector on a recorded 16-bit mono WAV file, with and without the energy
+// endpointer in front of the recognizer, to measure how much decoding it avoids. Vosk models are
+// too big to be part of the repository, so the paths are taken from environment variables, e.g.
+// VOSK_MODEL=/path/to/vosk-model-small-en-us-0.15 WAKE_WORD_WAV=/path/to/recording.wav
+// WAKE_WORD_PHRASE="hey computer" ./gradlew :benchmark:jmh -Pjmh.includes=WakeWordBenchmark
+// The fraction of audio that was actually decoded is printed at the end of every iteration.
+@State(Scope.Benchmark)
+public class WakeWordBenchmark {
+
+    @Param({"false", "true"})
+    public boolean alwaysDecode;
+
+    private Model model;
+    private File wavFile;
+    private String wakePhrase;
+    private int sampleRate;
+    private long processedSamples;
+    private long decodedSamples;
+
+    @Setup
+    public void setup() throws IOException {
+        final String modelPath = System.getenv("VOSK_MODEL");
+        final String wavPath = System.getenv("WAKE_WORD_WAV");
+        if (modelPath == null || wavPath == null) {
+            throw new IllegalStateException(
+                    "Set the VOSK_MODEL and WAKE_WORD_WAV environment variables");
+        }
+        final String wakePhraseEnv = System.getenv("WAKE_WORD_PHRASE");
+        wakePhrase = wakePhraseEnv == null ? "hey computer" : wakePhraseEnv;
+
+        LibVosk.setLogLevel(LogLevel.WARNINGS);
+        model = new Model(modelPath);
+        wavFile = new File(wavPath);
+        final WavFrameSource wav = new WavFrameSource(wavFile);
+        sampleRate = wav.getSampleRate();
+        wav.release();
+    }
+
+    @TearDown(Level.Iteration)
+    public void printDecodedFraction() {
+        if (processedSamples > 0) {
+            System.out.printf("%ndecoded %.1f%% of the audio%n",
+                    100.0 * decodedSamples / processedSamples);
+        }
+        processedSamples = 0;
+        decodedSamples = 0;
+    }
+
+    @TearDown
+    public void tearDown() {
+        model.close();
+    }
+
+    // detects the wake phrase as many times as it appears in the whole recording
+    @Benchmark
+    public void detectAll(final Blackhole blackhole) throws IOException {
+        final WavFrameSource wav = new WavFrameSource(wavFile);
+        try (Recognizer recognizer = new Recognizer(model, sampleRate,
+                WakeWordDetector.buildGrammar(wakePhrase))) {
+            while (true) {
+                final WakeWordDetector detector =
+                        new WakeWordDetector(recognizer, wakePhrase, alwaysDecode);
+                final boolean detected = detector.run(wav);
+                processedSamples += detector.getProcessedSamples();
+                decodedSamples += detector.getDecodedSamples();
+                blackhole.consume(detected);
+                if (!detected) {
+                    break;
+                }
+            }
+        } finally {
+            wav.release();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.ensias.ihearu.benchmark;
+
+import org.dicio.skill.util.WordExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+// Tokenization and normalization that every input alternative goes through before being ranked
+@State(Scope.Benchmark)
+public class WordExtractorBenchmark {
+
+    @Param({"en", "fr"})
+    public String locale;
+
+    private List<String> utterances;
+
+    @Setup
+    public void setup() {
+        utterances = Corpus.utterances(locale);
+    }
+
+    @Benchmark
+    public void extractWords(final Blackhole blackhole) {
+        for (final String utterance : utterances) {
+            blackhole.consume(WordExtractor.extractWords(utterance));
+        }
+    }
+
+    @Benchmark
+    public void extractAndNormalizeWords(final Blackhole blackhole) {
+        for (final String utterance : utterances) {
+            blackhole.consume(WordExtractor.normalizeWords(WordExtractor.extractWords(utterance)));
+        }
+    }
+}